@@ -0,0 +1,141 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.pasta.noodle;
+
+import sirius.kernel.cache.Cache;
+import sirius.kernel.cache.CacheManager;
+import sirius.kernel.commons.Hasher;
+import sirius.kernel.di.std.Register;
+import sirius.kernel.health.metrics.MetricProvider;
+import sirius.kernel.health.metrics.MetricsCollector;
+import sirius.pasta.Pasta;
+import sirius.pasta.noodle.compiler.CompilationContext;
+import sirius.pasta.noodle.compiler.CompileException;
+import sirius.pasta.noodle.compiler.NoodleCompiler;
+import sirius.pasta.noodle.compiler.SourceCodeInfo;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Keeps compiled ad-hoc <tt>Noodle</tt> scripts around so that they don't have to be parsed and assembled again.
+ * <p>
+ * Scripts which are stored in the configuration or in a database are often evaluated over and over again. Instead
+ * of invoking the {@link NoodleCompiler} for each evaluation, this cache keeps the resulting {@link Callable} in a
+ * LRU cache (<tt>noodle-scripts</tt>). The cache key is built from the name of the script (which is reported in
+ * compile and runtime errors), a hash of the source code and the {@link CompilationContext#getSignature() signature}
+ * of the compilation context, which covers the sandbox, all imports and all variables defined by the caller.
+ * <p>
+ * As a {@link Callable} keeps all of its runtime state in the given {@link Environment}, a cached instance can
+ * safely be shared and invoked by several threads at once.
+ */
+@Register(classes = {ScriptCache.class, MetricProvider.class})
+public class ScriptCache implements MetricProvider {
+
+    private final Cache<String, Callable> scripts = CacheManager.createLocalCache("noodle-scripts");
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Compiles the given script or fetches the matching compiled script from the cache.
+     *
+     * @param name        the name of the script used in error messages
+     * @param code        the source code of the script
+     * @param initializer a callback which can setup the compilation context (define variables, add imports, enable
+     *                    the sandbox) before the script is compiled. Note that this is invoked for each call, as its
+     *                    effect is part of the cache key.
+     * @return the compiled script which can be shared by several threads
+     * @throws CompileException in case of one or more compilation errors in the script
+     */
+    public Callable compileScript(@Nonnull String name,
+                                  @Nonnull String code,
+                                  @Nullable Consumer<CompilationContext> initializer) throws CompileException {
+        CompilationContext context =
+                new CompilationContext(new SourceCodeInfo(name, null, () -> new StringReader(code)));
+        if (initializer != null) {
+            initializer.accept(context);
+        }
+
+        String key = computeKey(name, code, context);
+        Callable result = scripts.get(key);
+        if (result != null) {
+            hits.incrementAndGet();
+            return result;
+        }
+
+        misses.incrementAndGet();
+        result = new NoodleCompiler(context).compileScript();
+        context.processCollectedErrors();
+        scripts.put(key, result);
+
+        if (Pasta.LOG.isFINE()) {
+            Pasta.LOG.FINE("Compiled and cached script '%s'...", name);
+        }
+
+        return result;
+    }
+
+    /**
+     * Compiles the given script or fetches the matching compiled script from the cache.
+     *
+     * @param code the source code of the script
+     * @return the compiled script which can be shared by several threads
+     * @throws CompileException in case of one or more compilation errors in the script
+     */
+    public Callable compileScript(@Nonnull String code) throws CompileException {
+        return compileScript("inline", code, null);
+    }
+
+    private String computeKey(String name, String code, CompilationContext context) {
+        return name + "|" + Hasher.sha1().hash(code).toHexString() + "|" + context.getSignature();
+    }
+
+    /**
+     * Drops all cached scripts.
+     */
+    public void flush() {
+        scripts.clear();
+    }
+
+    /**
+     * Returns the number of cache hits since the system was started.
+     *
+     * @return the number of scripts which were served from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of cache misses since the system was started.
+     *
+     * @return the number of scripts which had to be compiled
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public void gather(MetricsCollector collector) {
+        collector.differentialMetric("noodle_script_cache_hits",
+                                     "noodle-script-cache-hits",
+                                     "Noodle Script Cache Hits",
+                                     hits.get(),
+                                     "/min");
+        collector.differentialMetric("noodle_script_cache_misses",
+                                     "noodle-script-cache-misses",
+                                     "Noodle Script Cache Misses",
+                                     misses.get(),
+                                     "/min");
+    }
+}
@@ -438,6 +438,31 @@ public class CompilationContext {
         this.enableSandbox = false;
     }
 
+    /**
+     * Computes a signature which describes the setup of this context.
+     * <p>
+     * This contains the state of the sandbox, all {@link #addImport(Position, String, Class) imports} and the
+     * {@link VariableScoper#getSignature() signature} of all visible variables. Two scripts with the same source
+     * code, which are compiled in contexts with the same signature, will yield the same {@link
+     * sirius.pasta.noodle.Callable}.
+     *
+     * @return the signature of this context
+     */
+    public String getSignature() {
+        StringBuilder signature = new StringBuilder();
+        signature.append(enableSandbox ? "sandbox" : "unrestricted").append("|");
+        importedClasses.entrySet()
+                       .stream()
+                       .sorted(Map.Entry.comparingByKey())
+                       .forEach(entry -> signature.append(entry.getKey())
+                                                  .append("=")
+                                                  .append(entry.getValue().getName())
+                                                  .append(";"));
+        signature.append("|").append(variableScoper.getSignature());
+
+        return signature.toString();
+    }
+
     @Override
     public String toString() {
         StringBuilder result = new StringBuilder();
@@ -155,6 +155,29 @@ public class VariableScoper {
         return variable;
     }
 
+    /**
+     * Computes a signature of all currently visible variables.
+     * <p>
+     * As the compiled code depends on the names, types and indices of all variables which are visible when the
+     * compilation starts, this can be used as part of a cache key for compiled scripts.
+     *
+     * @return a string which describes all visible variables along with their types and indices
+     */
+    public String getSignature() {
+        StringBuilder signature = new StringBuilder();
+        for (Variable variable : variables) {
+            signature.append(variable.getName())
+                     .append(":")
+                     .append(variable.getType() == null ? "" : variable.getType().getTypeName())
+                     .append(":")
+                     .append(variable.getLocalIndex())
+                     .append(";");
+        }
+        signature.append(maxVariables);
+
+        return signature.toString();
+    }
+
     /**
      * Returns the total number of variables.
      *
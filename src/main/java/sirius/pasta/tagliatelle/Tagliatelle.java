@@ -28,12 +28,16 @@ import sirius.pasta.noodle.compiler.SourceCodeInfo;
 import sirius.pasta.tagliatelle.compiler.TemplateCompilationContext;
 import sirius.pasta.tagliatelle.compiler.TemplateCompiler;
 import sirius.pasta.tagliatelle.rendering.GlobalRenderContext;
+import sirius.web.resources.ClasspathIndex;
 import sirius.web.resources.Resource;
+import sirius.web.resources.ResourceChangeListener;
 import sirius.web.resources.Resources;
 import sirius.web.templates.Templates;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.File;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -50,8 +54,8 @@ import java.util.stream.Stream;
  * <p>
  * Helps to resolve and compile templates and also to generate a context used to render their output.
  */
-@Register(classes = Tagliatelle.class)
-public class Tagliatelle {
+@Register(classes = {Tagliatelle.class, ResourceChangeListener.class})
+public class Tagliatelle implements ResourceChangeListener {
 
     protected static final String PRAGMA_ALIAS = "alias";
 
@@ -61,6 +65,9 @@ public class Tagliatelle {
     @Part
     private Templates templates;
 
+    @Part
+    private ClasspathIndex classpathIndex;
+
     /**
      * Keeps compiled templates around to improve the speed of rendering.
      */
@@ -78,9 +85,8 @@ public class Tagliatelle {
     public MultiMap<String, String> getTagLibTags() {
         if (taglibTags == null) {
             MultiMap<String, String> result = MultiMap.createOrdered();
-            Sirius.getClasspath()
-                  .find(Pattern.compile("(default/|customizations/[^/]+/)?taglib/([a-z]+)/([^.]*).*.pasta"))
-                  .forEach(m -> result.put(m.group(2), m.group(3)));
+            classpathIndex.find(Pattern.compile("(default/|customizations/[^/]+/)?taglib/([a-z]+)/([^.]*).*.pasta"))
+                          .forEach(m -> result.put(m.group(2), m.group(3)));
             taglibTags = result;
         }
 
@@ -125,20 +131,21 @@ public class Tagliatelle {
     }
 
     private List<TemplateExtension> loadExtensions(String target) {
-        List<TemplateExtension> extensionsForTarget = Sirius.getClasspath()
-                                                            .find(Pattern.compile("(customizations/[^/]+/)?extensions/"
-                                                                                  + Pattern.quote(target)
-                                                                                  + "/.*.pasta"))
-                                                            .map(m -> m.group(0))
-                                                            .map(this::resolveToTemplateExtension)
-                                                            .filter(Objects::nonNull)
-                                                            .toList();
+        List<TemplateExtension> extensionsForTarget =
+                classpathIndex.find(Pattern.compile("(customizations/[^/]+/)?extensions/"
+                                                    + Pattern.quote(target)
+                                                    + "/.*.pasta"))
+                              .map(m -> m.group(0))
+                              .map(this::resolveToTemplateExtension)
+                              .filter(Objects::nonNull)
+                              .toList();
 
         // Also check for extensions provided as default - which are only loaded, if no overwrites (same path without
         // /default/ in front) exists...
         return Stream.concat(extensionsForTarget.stream(),
-                             Sirius.getClasspath()
-                                   .find(Pattern.compile("default/extensions/" + Pattern.quote(target) + "/.*.pasta"))
+                             classpathIndex.find(Pattern.compile("default/extensions/"
+                                                                 + Pattern.quote(target)
+                                                                 + "/.*.pasta"))
                                    .map(m -> m.group(0))
                                    .filter(path -> extensionsForTarget.stream()
                                                                       .noneMatch(extension -> Strings.areEqual(path.substring(
@@ -417,4 +424,28 @@ public class Tagliatelle {
     public List<Template> getCompiledTemplates() {
         return compiledTemplates.getContents().stream().map(CacheEntry::getValue).collect(Collectors.toList());
     }
+
+    @Override
+    public void resourceChanged(@Nullable File file, boolean createdOrDeleted) {
+        if (file == null) {
+            compiledTemplates.clear();
+            return;
+        }
+
+        compiledTemplates.getContents()
+                         .stream()
+                         .map(CacheEntry::getKey)
+                         .filter(resource -> isBackedBy(resource, file))
+                         .toList()
+                         .forEach(compiledTemplates::remove);
+    }
+
+    private boolean isBackedBy(Resource resource, File file) {
+        try {
+            return "file".equals(resource.getUrl().getProtocol()) && file.equals(new File(resource.getUrl().toURI()));
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            Exceptions.ignore(e);
+            return false;
+        }
+    }
 }
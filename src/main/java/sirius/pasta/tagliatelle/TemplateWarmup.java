@@ -0,0 +1,139 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.pasta.tagliatelle;
+
+import sirius.kernel.Sirius;
+import sirius.kernel.Startable;
+import sirius.kernel.commons.Watch;
+import sirius.kernel.di.std.ConfigValue;
+import sirius.kernel.di.std.Part;
+import sirius.kernel.di.std.Register;
+import sirius.kernel.health.Exceptions;
+import sirius.pasta.Pasta;
+import sirius.pasta.noodle.compiler.CompileException;
+import sirius.web.http.WebServer;
+import sirius.web.resources.ClasspathIndex;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles all known templates in parallel before the web server starts to accept requests.
+ * <p>
+ * By default, <tt>Tagliatelle</tt> compiles templates lazily, so that the first users after a restart would
+ * pay for compiling every template (and all tags used by it). Therefore, we enumerate all <tt>.pasta</tt> files
+ * on the classpath (templates, tag libraries, mail and PDF templates as well as assets) and compile them
+ * on a bounded {@link ForkJoinPool}. As this runs before the {@link WebServer} is started, <tt>/system/ok</tt> will
+ * only be reachable once the warm-up completed or its budget (<tt>tagliatelle.warmup.budget</tt>) was exceeded.
+ * <p>
+ * Note that the warm-up is skipped in development systems, as these are restarted frequently and usually only
+ * touch a handful of templates.
+ */
+@Register
+public class TemplateWarmup implements Startable {
+
+    /**
+     * Matches all templates on the classpath. Customizations are skipped, as these are resolved per scope.
+     */
+    private static final Pattern TEMPLATE_PATTERN = Pattern.compile("(default/)?((?!customizations/).+\\.pasta)");
+
+    @ConfigValue("tagliatelle.warmup.enabled")
+    private boolean enabled;
+
+    @ConfigValue("tagliatelle.warmup.parallelism")
+    private int parallelism;
+
+    @ConfigValue("tagliatelle.warmup.budget")
+    private Duration budget;
+
+    @Part
+    private Tagliatelle tagliatelle;
+
+    @Part
+    private ClasspathIndex classpathIndex;
+
+    @Override
+    public int getPriority() {
+        return WebServer.LIFECYCLE_PRIORITY - 10;
+    }
+
+    @Override
+    public void started() {
+        if (!enabled || Sirius.isDev()) {
+            return;
+        }
+
+        Set<String> paths = new TreeSet<>();
+        classpathIndex.find(TEMPLATE_PATTERN).forEach(match -> paths.add("/" + match.group(2)));
+
+        Watch watch = Watch.start();
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger compiled = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(determineParallelism());
+        try {
+            paths.forEach(path -> pool.execute(() -> compile(path, compiled, errors)));
+            pool.shutdown();
+            if (!pool.awaitTermination(budget.toMillis(), TimeUnit.MILLISECONDS)) {
+                Pasta.LOG.WARN("Template warm-up exceeded its budget of %s. Compiled %s of %s templates. "
+                               + "The remaining ones will be compiled on demand.",
+                               budget,
+                               compiled.get(),
+                               paths.size());
+            }
+        } catch (InterruptedException e) {
+            Exceptions.ignore(e);
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Pasta.LOG.INFO("Compiled %s of %s templates in %s.", compiled.get(), paths.size(), watch.duration());
+        reportErrors(errors);
+    }
+
+    private int determineParallelism() {
+        if (parallelism <= 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+
+        return Math.min(parallelism, Runtime.getRuntime().availableProcessors());
+    }
+
+    private void compile(String path, AtomicInteger compiled, List<String> errors) {
+        try {
+            tagliatelle.resolve(path);
+            compiled.incrementAndGet();
+        } catch (CompileException e) {
+            errors.add(path + ": " + e.getMessage());
+        } catch (Exception e) {
+            errors.add(path + ": " + e.getMessage() + " (" + e.getClass().getName() + ")");
+        }
+    }
+
+    private void reportErrors(List<String> errors) {
+        if (errors.isEmpty()) {
+            return;
+        }
+
+        StringBuilder message = new StringBuilder();
+        message.append("Template warm-up detected ").append(errors.size()).append(" broken template(s):\n\n");
+        synchronized (errors) {
+            errors.stream().sorted().forEach(error -> message.append(error).append("\n\n"));
+        }
+        Pasta.LOG.WARN(message);
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.web.controller;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import sirius.kernel.async.CallContext;
+import sirius.kernel.async.Promise;
+import sirius.kernel.async.Tasks;
+import sirius.kernel.commons.Callback;
+import sirius.kernel.di.std.ConfigValue;
+import sirius.kernel.di.std.Part;
+import sirius.kernel.health.Exceptions;
+import sirius.web.http.ConcurrencyLimiter;
+import sirius.web.http.Lane;
+import sirius.web.http.WebContext;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Waits for the completion of a {@link Promise} or {@link CompletableFuture} returned by a route.
+ * <p>
+ * Once the result is available, the given handler is invoked within the executor of the route (or the
+ * <tt>webserver</tt> executor), using the {@link CallContext} of the original request. If the result isn't
+ * available within <tt>controller.asyncTimeout</tt>, the computation is cancelled and a 503 is sent. If the client
+ * closes the connection beforehand, the computation is cancelled as well.
+ */
+class AsyncRouteCompletion {
+
+    private static final String EXECUTOR_WEBSERVER = "webserver";
+
+    @ConfigValue("controller.asyncTimeout")
+    private static Duration asyncTimeout;
+
+    @Part
+    private static Tasks tasks;
+
+    @Part
+    private static ConcurrencyLimiter limiter;
+
+    private final WebContext webContext;
+    private final Route route;
+    private final CallContext callContext;
+    private final Channel channel;
+    private final AtomicBoolean completed = new AtomicBoolean();
+    private final ChannelFutureListener closeListener = ignored -> abort();
+    private final Runnable abandonHandler;
+    private volatile ScheduledFuture<?> timeout;
+    private Runnable cancellation;
+
+    private AsyncRouteCompletion(WebContext webContext, Route route, @Nullable Runnable abandonHandler) {
+        this.webContext = webContext;
+        this.route = route;
+        this.abandonHandler = abandonHandler;
+        this.callContext = CallContext.getCurrent();
+        this.channel = webContext.getCtx().channel();
+    }
+
+    /**
+     * Determines if the given value returned by a route represents an asynchronous result.
+     *
+     * @param result the value returned by the route
+     * @return <tt>true</tt> if the value is a promise or future, <tt>false</tt> otherwise
+     */
+    static boolean isAsync(Object result) {
+        return result instanceof Promise || result instanceof CompletableFuture;
+    }
+
+    /**
+     * Waits for the given promise or future to complete.
+     *
+     * @param webContext the request being handled
+     * @param route      the route which returned the result
+     * @param result     the promise or future returned by the route
+     * @param onSuccess  the handler which creates the response for the computed value
+     * @param onFailure  the handler which is invoked if the computation failed
+     */
+    static void await(WebContext webContext,
+                      Route route,
+                      Object result,
+                      Callback<Object> onSuccess,
+                      Consumer<Throwable> onFailure) {
+        await(webContext, route, result, onSuccess, onFailure, null);
+    }
+
+    /**
+     * Waits for the given promise or future to complete.
+     *
+     * @param webContext     the request being handled
+     * @param route          the route which returned the result
+     * @param result         the promise or future returned by the route
+     * @param onSuccess      the handler which creates the response for the computed value
+     * @param onFailure      the handler which is invoked if the computation failed
+     * @param abandonHandler the handler which is invoked if no result will be sent, as the computation timed out or
+     *                       the connection was closed. This can be used to release a partially generated output
+     */
+    static void await(WebContext webContext,
+                      Route route,
+                      Object result,
+                      Callback<Object> onSuccess,
+                      Consumer<Throwable> onFailure,
+                      @Nullable Runnable abandonHandler) {
+        new AsyncRouteCompletion(webContext, route, abandonHandler).start(result, onSuccess, onFailure);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void start(Object result, Callback<Object> onSuccess, Consumer<Throwable> onFailure) {
+        // No thread is occupied while waiting for the result, therefore the request no longer counts against the
+        // global limit (and its wait time isn't taken as latency)...
+        limiter.handOver(webContext);
+
+        CompletableFuture<?> future = result instanceof CompletableFuture<?> completableFuture ?
+                                      completableFuture :
+                                      null;
+        Promise<Object> promise = future == null ? (Promise<Object>) result : null;
+        if (future != null) {
+            cancellation = () -> future.cancel(true);
+        } else {
+            cancellation = () -> {
+                if (!promise.isCompleted()) {
+                    promise.fail(new CancellationException());
+                }
+            };
+        }
+
+        channel.closeFuture().addListener(closeListener);
+        if (!asyncTimeout.isZero()) {
+            timeout = channel.eventLoop().schedule(this::handleTimeout, asyncTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        if (future != null) {
+            future.whenComplete((value, error) -> complete(value, error, onSuccess, onFailure));
+        } else {
+            promise.onSuccess(value -> complete(value, null, onSuccess, onFailure))
+                   .onFailure(error -> complete(null, error, onSuccess, onFailure));
+        }
+    }
+
+    private void complete(Object value, Throwable error, Callback<Object> onSuccess, Consumer<Throwable> onFailure) {
+        if (!completed.compareAndSet(false, true)) {
+            return;
+        }
+
+        cleanup();
+        fork(() -> {
+            if (error != null) {
+                onFailure.accept(error instanceof CompletionException && error.getCause() != null ?
+                                 error.getCause() :
+                                 error);
+                return;
+            }
+
+            try {
+                onSuccess.invoke(value);
+            } catch (Exception e) {
+                onFailure.accept(e);
+            }
+        });
+    }
+
+    private void handleTimeout() {
+        if (!completed.compareAndSet(false, true)) {
+            return;
+        }
+
+        cleanup();
+        cancellation.run();
+        ControllerDispatcher.LOG.FINE("The asynchronous route %s timed out for: %s",
+                                      route,
+                                      webContext.getRequestedURI());
+        fork(() -> {
+            abandon();
+            webContext.respondWith()
+                      .error(HttpResponseStatus.SERVICE_UNAVAILABLE, "The request could not be completed in time.");
+        });
+    }
+
+    private void abort() {
+        if (!completed.compareAndSet(false, true)) {
+            return;
+        }
+
+        cleanup();
+        cancellation.run();
+        fork(this::abandon);
+    }
+
+    private void abandon() {
+        if (abandonHandler != null) {
+            abandonHandler.run();
+        }
+    }
+
+    private void cleanup() {
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
+        channel.closeFuture().removeListener(closeListener);
+    }
+
+    /*
+     * Creates the response within a worker thread, as the promise might be completed by an I/O thread (or the
+     * event loop in case of a timeout).
+     */
+    private void fork(Runnable task) {
+        String executor = route.getLane() != null ? Lane.EXECUTOR_PREFIX + route.getLane() : EXECUTOR_WEBSERVER;
+        tasks.executor(executor).fork(() -> {
+            CallContext.setCurrent(callContext);
+            try {
+                task.run();
+            } catch (Exception e) {
+                Exceptions.handle(ControllerDispatcher.LOG, e);
+            }
+        });
+    }
+}
@@ -11,13 +11,13 @@ package sirius.web.controller;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import sirius.kernel.async.CallContext;
-import sirius.kernel.async.Promise;
 import sirius.kernel.async.TaskContext;
 import sirius.kernel.async.Tasks;
 import sirius.kernel.commons.CachingSupplier;
 import sirius.kernel.commons.Callback;
 import sirius.kernel.commons.Explain;
 import sirius.kernel.commons.PriorityCollector;
+import sirius.kernel.commons.Strings;
 import sirius.kernel.di.Injector;
 import sirius.kernel.di.std.ConfigValue;
 import sirius.kernel.di.std.Part;
@@ -26,10 +26,11 @@ import sirius.kernel.di.std.Register;
 import sirius.kernel.health.Exceptions;
 import sirius.kernel.health.Log;
 import sirius.kernel.xml.StructuredOutput;
+import sirius.web.http.ConcurrencyLimiter;
 import sirius.web.http.Firewall;
 import sirius.web.http.InputStreamHandler;
-import sirius.web.http.Limited;
-import sirius.web.http.Unlimited;
+import sirius.web.http.Lane;
+import sirius.web.http.Response;
 import sirius.web.http.WebContext;
 import sirius.web.http.WebDispatcher;
 import sirius.web.security.MaintenanceInfo;
@@ -43,7 +44,6 @@ import java.nio.channels.ClosedChannelException;
 import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
 
 /**
  * Dispatches incoming requests to the appropriate {@link Controller}.
@@ -76,6 +76,9 @@ public class ControllerDispatcher implements WebDispatcher {
     @Nullable
     private Firewall firewall;
 
+    @Part
+    private ConcurrencyLimiter limiter;
+
     /**
      * The priority of this controller is {@code PriorityCollector.DEFAULT_PRIORITY + 10} as it is quite complex
      * to check each request against each route.
@@ -122,7 +125,7 @@ public class ControllerDispatcher implements WebDispatcher {
             return params;
         }
         // Check if interceptors permit execution of route...
-        for (Interceptor interceptor : interceptors) {
+        for (Interceptor interceptor : route.getInterceptors()) {
             if (!interceptor.shouldExecuteRoute(webContext, route)) {
                 return Route.NO_MATCH;
             }
@@ -137,11 +140,8 @@ public class ControllerDispatcher implements WebDispatcher {
                                      InputStreamHandler inputStreamHandler) {
         try {
             if (firewall != null
-                && !route.getMethod().isAnnotationPresent(Unlimited.class)
-                && firewall.handleRateLimiting(webContext,
-                                               Optional.ofNullable(route.getMethod().getAnnotation(Limited.class))
-                                                       .map(Limited::value)
-                                                       .orElse(Limited.HTTP))) {
+                && route.getRateLimitRealm() != null
+                && firewall.handleRateLimiting(webContext, route.getRateLimitRealm())) {
                 return;
             }
 
@@ -166,17 +166,38 @@ public class ControllerDispatcher implements WebDispatcher {
                 params.add(inputStreamHandler);
             }
 
-            TaskContext.get()
-                       .setSystem(SYSTEM_MVC)
-                       .setSubSystem(route.getController().getClass().getSimpleName())
-                       .setJob(webContext.getRequestedURI());
-
-            performRoute(webContext, route, params, 0);
+            if (route.getLane() != null) {
+                performRouteInLane(webContext, route, params);
+            } else {
+                setupTaskContext(webContext, route);
+                performRoute(webContext, route, params, 0);
+            }
         } catch (final Exception e) {
             handleFailure(webContext, route, e);
         }
     }
 
+    private void setupTaskContext(WebContext webContext, Route route) {
+        TaskContext.get()
+                   .setSystem(SYSTEM_MVC)
+                   .setSubSystem(route.getController().getClass().getSimpleName())
+                   .setJob(webContext.getRequestedURI());
+    }
+
+    /*
+     * Hands the route over to the executor of its lane, so that it doesn't block the threads of the webserver.
+     */
+    private void performRouteInLane(WebContext webContext, Route route, List<Object> params) {
+        // The lane has its own pool and queue, therefore the request no longer counts against the global limit...
+        limiter.handOver(webContext);
+        tasks.executor(Lane.EXECUTOR_PREFIX + route.getLane())
+             .dropOnOverload(() -> limiter.shed(webContext))
+             .fork(() -> {
+                 setupTaskContext(webContext, route);
+                 performRoute(webContext, route, params, 0);
+             });
+    }
+
     @Override
     @SuppressWarnings("squid:S1698")
     @Explain("We actually can use object identity here as this is a marker object.")
@@ -194,6 +215,7 @@ public class ControllerDispatcher implements WebDispatcher {
     }
 
     private void performRoute(WebContext webContext, Route route, List<Object> params, int interceptorIndex) {
+        List<Interceptor> interceptors = route.getInterceptors();
         try {
             for (int index = interceptorIndex; index < interceptors.size(); index++) {
                 final int lastExecutedInterceptor = index;
@@ -236,36 +258,57 @@ public class ControllerDispatcher implements WebDispatcher {
         if (route.getApiResponseFormat() != null) {
             executeApiCall(webContext, route, params);
         } else {
-            route.invoke(params);
+            Object result = route.invoke(params);
+            if (AsyncRouteCompletion.isAsync(result)) {
+                AsyncRouteCompletion.await(webContext,
+                                           route,
+                                           result,
+                                           value -> respondWithResult(webContext, value),
+                                           error -> handleFailure(webContext, route, error));
+            }
+        }
+    }
+
+    private void respondWithResult(WebContext webContext, Object value) throws Exception {
+        if (value instanceof RouteResult routeResult) {
+            routeResult.respond(webContext);
+        } else if (value != null) {
+            throw new IllegalArgumentException(Strings.apply(
+                    "An asynchronous route has to yield a RouteResult or null but returned: %s",
+                    value.getClass().getName()));
         }
     }
 
     private void executeApiCall(WebContext webContext, Route route, List<Object> params) throws Exception {
-        StructuredOutput out = createOutput(webContext, route.getApiResponseFormat());
+        Response response = webContext.respondWith();
+        StructuredOutput out = createOutput(response, route.getApiResponseFormat());
         params.add(1, out);
         out.beginResult();
         out.property("success", true);
         out.property("error", false);
         Object result = route.invoke(params);
-        if (result instanceof Promise) {
-            ((Promise<?>) result).onSuccess(ignored -> out.endResult()).onFailure(e -> {
-                handleFailure(webContext, route, e);
-            });
+        if (AsyncRouteCompletion.isAsync(result)) {
+            // If the computation fails or is abandoned, the already started output is discarded, as an error
+            // is sent instead (or nothing at all)...
+            AsyncRouteCompletion.await(webContext, route, result, ignored -> out.endResult(), error -> {
+                response.discardOutputStream();
+                handleFailure(webContext, route, error);
+            }, response::discardOutputStream);
         } else {
             out.endResult();
         }
     }
 
-    private StructuredOutput createOutput(WebContext webContext, Format apiResponseFormat) {
+    private StructuredOutput createOutput(Response response, Format apiResponseFormat) {
         return switch (apiResponseFormat) {
-            case JSON -> webContext.respondWith().json();
-            case XML -> webContext.respondWith().xml();
+            case JSON -> response.json();
+            case XML -> response.xml();
             default -> throw new IllegalStateException("Unexpected value: " + apiResponseFormat);
         };
     }
 
     private void handlePermissionError(WebContext webContext, Route route, String missingPermission) throws Exception {
-        for (Interceptor interceptor : interceptors) {
+        for (Interceptor interceptor : route.getInterceptors()) {
             if (interceptor.beforePermissionError(missingPermission, webContext, route)) {
                 return;
             }
@@ -316,6 +359,7 @@ public class ControllerDispatcher implements WebDispatcher {
 
         List<Route> allRoutes = collector.getData();
         optimizeRoutes(allRoutes);
+        allRoutes.forEach(route -> route.computeInterceptors(interceptors));
 
         return allRoutes;
     }
@@ -83,4 +83,18 @@ public interface Interceptor extends Priorized {
      * @return <tt>true</tt> if the route should be executed, <tt>false</tt> otherwise
      */
     boolean shouldExecuteRoute(WebContext ctx, Route route);
+
+    /**
+     * Determines if this interceptor has to be considered for the given route at all.
+     * <p>
+     * This is evaluated once, when the routes are compiled. If <tt>false</tt> is returned, the interceptor is
+     * removed from the chain of the route and none of its methods will be invoked for it. Therefore, this check must
+     * only depend on the route itself (e.g. its method or controller) and not on the current request.
+     *
+     * @param route the route to check
+     * @return <tt>true</tt> if the interceptor is to be invoked for the given route, <tt>false</tt> otherwise
+     */
+    default boolean isApplicable(Route route) {
+        return true;
+    }
 }
@@ -19,6 +19,9 @@ import sirius.kernel.health.Exceptions;
 import sirius.kernel.nls.NLS;
 import sirius.kernel.xml.XMLStructuredOutput;
 import sirius.web.http.InputStreamHandler;
+import sirius.web.http.Lane;
+import sirius.web.http.Limited;
+import sirius.web.http.Unlimited;
 import sirius.web.http.WebContext;
 import sirius.web.http.WebServer;
 import sirius.web.security.Permissions;
@@ -30,6 +33,7 @@ import sirius.web.services.PublicService;
 import sirius.web.services.PublicServices;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.UnsupportedEncodingException;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
@@ -40,7 +44,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -67,13 +73,18 @@ public class Route {
     private MethodHandle methodHandle;
     private String uri;
     private Class<?>[] parameterTypes;
+    private Function<String, Object>[] coercions;
     private Controller controller;
     private boolean preDispatchable;
     private Format format;
     private boolean enforceMaintenanceMode;
     private Set<String> permissions = null;
+    private String[] requiredPermissions;
     private String subScope;
     private boolean deprecated;
+    private String lane;
+    private String rateLimitRealm;
+    private List<Interceptor> interceptors = Collections.emptyList();
 
     /**
      * Compiles a method defined by a {@link Controller}
@@ -91,7 +102,10 @@ public class Route {
         result.label = result.uri + " -> " + method.getDeclaringClass().getName() + "#" + method.getName();
         result.preDispatchable = routed.preDispatchable();
         result.permissions = Permissions.computePermissionsFromAnnotations(method);
+        result.requiredPermissions = result.permissions.toArray(new String[0]);
         result.deprecated = method.isAnnotationPresent(Deprecated.class);
+        result.lane = determineLane(controller, method);
+        result.rateLimitRealm = determineRateLimitRealm(method);
         determineAPIFormat(method, routed, result);
         determineSubScope(method, result);
         createMethodHandle(method, result);
@@ -107,6 +121,7 @@ public class Route {
         failForInvalidParameterCount(routed, parameterTypes, params);
 
         result.parameterTypes = parameterTypes.toArray(CLASS_ARRAY);
+        result.coercions = compileCoercions(result.parameterTypes);
         result.pattern = Pattern.compile(finalPattern.toString());
         return result;
     }
@@ -142,6 +157,46 @@ public class Route {
         }
     }
 
+    @Nullable
+    private static String determineRateLimitRealm(Method method) {
+        if (method.isAnnotationPresent(Unlimited.class)) {
+            return null;
+        }
+
+        return Optional.ofNullable(method.getAnnotation(Limited.class)).map(Limited::value).orElse(Limited.HTTP);
+    }
+
+    /*
+     * Determines how to convert each parameter extracted from the URI, so that this doesn't have to be
+     * figured out for each request.
+     */
+    @SuppressWarnings("unchecked")
+    private static Function<String, Object>[] compileCoercions(Class<?>[] parameterTypes) {
+        Function<String, Object>[] result = new Function[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Class<?> type = parameterTypes[i];
+            if (String.class.equals(type)) {
+                result[i] = value -> value;
+            } else {
+                result[i] = value -> Value.of(value).coerce(type, null);
+            }
+        }
+
+        return result;
+    }
+
+    @Nullable
+    private static String determineLane(Controller controller, Method method) {
+        if (method.isAnnotationPresent(Lane.class)) {
+            return method.getAnnotation(Lane.class).value();
+        }
+        if (controller.getClass().isAnnotationPresent(Lane.class)) {
+            return controller.getClass().getAnnotation(Lane.class).value();
+        }
+
+        return null;
+    }
+
     private static void determineSubScope(Method method, Route result) {
         if (method.isAnnotationPresent(SubScope.class)) {
             if (result.permissions.isEmpty()) {
@@ -304,7 +359,7 @@ public class Route {
                 ctx.setAttribute((String) expr.getSecond(), value);
             } else if (":".equals(expr.getFirst())) {
                 int idx = (Integer) expr.getSecond();
-                Object effectiveValue = Value.of(value).coerce(parameterTypes[idx - 1], null);
+                Object effectiveValue = coercions[idx - 1].apply(value);
                 setAtPosition(result, idx, effectiveValue);
             } else if ("**".equals(expr.getFirst())) {
                 //we need to split the encoded values so we dont mistake data for the delimiter
@@ -361,7 +416,7 @@ public class Route {
             return "Scope: " + subScope;
         }
 
-        for (String p : permissions) {
+        for (String p : requiredPermissions) {
             if (!user.get().hasPermission(p)) {
                 return p;
             }
@@ -440,6 +495,48 @@ public class Route {
         return deprecated;
     }
 
+    /**
+     * Returns the realm used for rate limiting this route.
+     *
+     * @return the realm as determined by {@link Limited} or <tt>null</tt> if the route is {@link Unlimited}
+     */
+    @Nullable
+    public String getRateLimitRealm() {
+        return rateLimitRealm;
+    }
+
+    /**
+     * Returns the interceptors which are applicable for this route.
+     *
+     * @return the interceptors to invoke (in order of their priority)
+     * @see Interceptor#isApplicable(Route)
+     */
+    public List<Interceptor> getInterceptors() {
+        return interceptors;
+    }
+
+    /**
+     * Determines the chain of interceptors for this route.
+     * <p>
+     * This is invoked once by the {@link ControllerDispatcher} when building the router.
+     *
+     * @param allInterceptors all known interceptors, sorted by their priority
+     */
+    protected void computeInterceptors(List<Interceptor> allInterceptors) {
+        this.interceptors = allInterceptors.stream().filter(interceptor -> interceptor.isApplicable(this)).toList();
+    }
+
+    /**
+     * Returns the execution lane this route is assigned to.
+     *
+     * @return the name of the lane or <tt>null</tt> if the route is executed by the <tt>webserver</tt> executor
+     * @see Lane
+     */
+    @Nullable
+    public String getLane() {
+        return lane;
+    }
+
     /**
      * Returns a string representation of the internal matching pattern, to detect routes which match the same URLs.
      *
@@ -454,7 +551,8 @@ public class Route {
      *
      * @param params the parameters to supply
      * @return the result of the route. This will most probably be null (as routes are mostly void), but might be
-     * a {@link Promise} which is used for JSON calls to indicate that the response will be completed in another thread.
+     * a {@link Promise} or {@link java.util.concurrent.CompletableFuture} to indicate that the response will be
+     * completed in another thread (see {@link RouteResult}).
      * @throws Exception in case of an error during the invocation
      */
     public Object invoke(List<Object> params) throws Exception {
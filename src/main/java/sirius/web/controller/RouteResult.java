@@ -0,0 +1,94 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.web.controller;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import sirius.kernel.commons.Callback;
+import sirius.web.http.WebContext;
+import sirius.web.services.JSONStructuredOutput;
+
+/**
+ * Describes the response to create once an asynchronous route has completed.
+ * <p>
+ * A method wearing a {@link Routed} annotation may return a {@link sirius.kernel.async.Promise} or a
+ * {@link java.util.concurrent.CompletableFuture}. In this case, the worker thread is released right away and the
+ * response is created once the promise is fulfilled. The value of the promise is then either a <tt>RouteResult</tt>
+ * or <tt>null</tt>, if the completion handler already created the response itself.
+ * <p>
+ * An example would be:
+ * <pre>{@code
+ * @Routed("/status")
+ * public CompletableFuture<RouteResult> status(WebContext webContext) {
+ *     return remoteService.fetchStatus().thenApply(status -> RouteResult.template("/templates/status.html.pasta",
+ *                                                                                 status));
+ * }
+ * }</pre>
+ *
+ * @see ControllerDispatcher
+ */
+@FunctionalInterface
+public interface RouteResult {
+
+    /**
+     * Creates the response for the given request.
+     *
+     * @param webContext the request to respond to
+     * @throws Exception in case of an error when creating the response
+     */
+    void respond(WebContext webContext) throws Exception;
+
+    /**
+     * Renders the given template.
+     *
+     * @param name   the name of the template to render
+     * @param params the parameters to pass to the template
+     * @return a result which renders the given template
+     */
+    static RouteResult template(String name, Object... params) {
+        return webContext -> webContext.respondWith().template(name, params);
+    }
+
+    /**
+     * Creates a JSON response.
+     * <p>
+     * The given producer is invoked between {@link JSONStructuredOutput#beginResult()} and
+     * {@link JSONStructuredOutput#endResult()}.
+     *
+     * @param producer the producer which fills the JSON result
+     * @return a result which creates a JSON response
+     */
+    static RouteResult json(Callback<JSONStructuredOutput> producer) {
+        return webContext -> {
+            JSONStructuredOutput output = webContext.respondWith().json();
+            output.beginResult();
+            producer.invoke(output);
+            output.endResult();
+        };
+    }
+
+    /**
+     * Redirects the client to the given URL using a GET request.
+     *
+     * @param url the URL to redirect to
+     * @return a result which sends a redirect
+     */
+    static RouteResult redirect(String url) {
+        return webContext -> webContext.respondWith().redirectToGet(url);
+    }
+
+    /**
+     * Sends the given status without any content.
+     *
+     * @param status the status to send
+     * @return a result which sends the given status
+     */
+    static RouteResult status(HttpResponseStatus status) {
+        return webContext -> webContext.respondWith().status(status);
+    }
+}
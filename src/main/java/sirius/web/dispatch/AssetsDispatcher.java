@@ -13,7 +13,11 @@ import io.netty.handler.codec.http.HttpResponseStatus;
 import org.serversass.Generator;
 import org.serversass.Output;
 import sirius.kernel.Sirius;
+import sirius.kernel.Startable;
 import sirius.kernel.async.CallContext;
+import sirius.kernel.async.Tasks;
+import sirius.kernel.cache.Cache;
+import sirius.kernel.cache.CacheManager;
 import sirius.kernel.commons.Files;
 import sirius.kernel.commons.PriorityCollector;
 import sirius.kernel.commons.Strings;
@@ -24,10 +28,12 @@ import sirius.kernel.di.std.Register;
 import sirius.kernel.health.Exceptions;
 import sirius.kernel.health.Log;
 import sirius.kernel.info.Product;
+import sirius.kernel.nls.NLS;
 import sirius.kernel.settings.Extension;
 import sirius.pasta.noodle.compiler.CompileException;
 import sirius.pasta.tagliatelle.Tagliatelle;
 import sirius.pasta.tagliatelle.Template;
+import sirius.pasta.tagliatelle.rendering.GlobalRenderContext;
 import sirius.web.http.Response;
 import sirius.web.http.WebContext;
 import sirius.web.http.WebDispatcher;
@@ -42,8 +48,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -60,8 +73,8 @@ import java.util.regex.Pattern;
  * sources into a single output file. Also note, that we support cachable i18n content, but also resolving a file
  * named <tt>my-script_de.js</tt> into <tt>my-script.js.pasta</tt>.
  */
-@Register(classes = {AssetsDispatcher.class, WebDispatcher.class})
-public class AssetsDispatcher implements WebDispatcher {
+@Register(classes = {AssetsDispatcher.class, WebDispatcher.class, Startable.class})
+public class AssetsDispatcher implements WebDispatcher, Startable {
 
     private static final String ASSETS_PREFIX = "/assets/";
     private static final Pattern INTERNATIONALIZED_TEMPLATE_URI = Pattern.compile("(?<path>.*)_[a-z]{2}\\.(?<extension>.*)");
@@ -71,18 +84,38 @@ public class AssetsDispatcher implements WebDispatcher {
     private String cacheDir;
     private File cacheDirFile;
 
+    @ConfigValue("assets.warmup.enabled")
+    private boolean sassWarmup;
+
+    @ConfigValue("assets.warmup.stylesheets")
+    private List<String> sassWarmupStylesheets;
+
+    @Part
+    private Tasks tasks;
+
     @Part
     private Resources resources;
 
     @Part
     private Tagliatelle tagliatelle;
 
+    /**
+     * Keeps the encoded output of constant templates, so that these don't have to be rendered over and over again.
+     */
+    private final Cache<String, PreRenderedTemplate> preRenderedTemplates =
+            CacheManager.createLocalCache("tagliatelle-assets");
+
     private static final Log SASS_LOG = Log.get("sass");
 
-    @Override
-    public int getPriority() {
-        return PriorityCollector.DEFAULT_PRIORITY - 10;
-    }
+    /**
+     * Contains a lock object per compiled stylesheet to ensure that each sheet is only compiled once at a time.
+     */
+    private final Map<String, Object> sassLocks = new ConcurrentHashMap<>();
+
+    /**
+     * Contains the compilation timestamp and the dependencies of each stylesheet compiled since the system was started.
+     */
+    private final Map<String, CompiledSheet> compiledSheets = new ConcurrentHashMap<>();
 
     @Override
     public DispatchDecision dispatch(WebContext ctx) throws Exception {
@@ -142,10 +175,7 @@ public class AssetsDispatcher implements WebDispatcher {
         try {
             Optional<Template> template = tagliatelle.resolve(uri + PASTA_SUFFIX);
             if (template.isPresent()) {
-                if (!handleUnmodified(template.get(), response)) {
-                    response.template(HttpResponseStatus.OK, template.get());
-                }
-
+                respondWithTemplate(template.get(), response);
                 return DispatchDecision.DONE;
             }
 
@@ -162,10 +192,7 @@ public class AssetsDispatcher implements WebDispatcher {
             Optional<Template> template =
                     tagliatelle.resolve(i18nMatcher.group("path")+ "." + i18nMatcher.group("extension") + PASTA_SUFFIX);
             if (template.isPresent()) {
-                if (!handleUnmodified(template.get(), response)) {
-                    response.template(HttpResponseStatus.OK, template.get());
-                }
-
+                respondWithTemplate(template.get(), response);
                 return DispatchDecision.DONE;
             }
         }
@@ -173,12 +200,69 @@ public class AssetsDispatcher implements WebDispatcher {
         return DispatchDecision.CONTINUE;
     }
 
-    private boolean handleUnmodified(Template template, Response response) {
-        if (!template.isConstant()) {
-            return false;
+    private void respondWithTemplate(Template template, Response response) {
+        if (template.isConstant()) {
+            PreRenderedTemplate preRenderedTemplate = fetchPreRenderedContent(template);
+            if (preRenderedTemplate != null) {
+                response.preRendered(HttpResponseStatus.OK,
+                                     template.getEffectiveFileName(),
+                                     preRenderedTemplate.content(),
+                                     preRenderedTemplate.etag(),
+                                     template.getCompilationTimestamp());
+                return;
+            }
+            if (response.handleIfModifiedSince(template.getCompilationTimestamp())) {
+                return;
+            }
+        }
+
+        response.template(HttpResponseStatus.OK, template);
+    }
+
+    /**
+     * Fetches or renders the encoded output of a constant template.
+     * <p>
+     * The entries are keyed by scope, language and template path. As a modified resource is recompiled into a new
+     * {@link Template} by {@link Tagliatelle}, we compare the cached template against the given one to detect
+     * outdated entries.
+     *
+     * @param template the constant template to render
+     * @return the UTF-8 encoded output of the template along with its entity tag or <tt>null</tt> if it cannot be
+     * rendered
+     */
+    private PreRenderedTemplate fetchPreRenderedContent(Template template) {
+        String cacheKey = UserContext.getCurrentScope().getScopeId()
+                          + "|"
+                          + NLS.getCurrentLanguage()
+                          + "|"
+                          + template.getName();
+        PreRenderedTemplate entry = preRenderedTemplates.get(cacheKey);
+        if (entry != null && entry.template() == template) {
+            return entry;
         }
 
-        return response.handleIfModifiedSince(template.getCompilationTimestamp());
+        try {
+            GlobalRenderContext renderContext = tagliatelle.createRenderContext();
+            template.render(renderContext);
+            byte[] content = renderContext.toString().getBytes(StandardCharsets.UTF_8);
+            entry = new PreRenderedTemplate(template, content, Response.computeETag(content));
+            preRenderedTemplates.put(cacheKey, entry);
+            return entry;
+        } catch (Exception e) {
+            // Let the regular rendering take care of reporting the error...
+            Exceptions.ignore(e);
+            return null;
+        }
+    }
+
+    /**
+     * Represents the encoded output of a constant template.
+     *
+     * @param template the template which was rendered
+     * @param content  the UTF-8 encoded output
+     * @param etag     the entity tag computed for the output
+     */
+    private record PreRenderedTemplate(Template template, byte[] content, String etag) {
     }
 
     private DispatchDecision trySASS(WebContext ctx, String uri, Response response) {
@@ -186,8 +270,6 @@ public class AssetsDispatcher implements WebDispatcher {
             return DispatchDecision.CONTINUE;
         }
 
-        String scopeId = UserContext.getCurrentScope().getScopeId();
-
         String scssUri = uri.substring(0, uri.length() - 4) + ".scss";
         Optional<Resource> resource = resources.resolve(scssUri);
         if (resource.isEmpty()) {
@@ -195,29 +277,84 @@ public class AssetsDispatcher implements WebDispatcher {
         }
 
         ctx.enableTiming("/assets/*.css");
+        File file;
+        try {
+            file = ensureCompiledSASS(uri, scssUri);
+        } catch (Exception t) {
+            ctx.respondWith().error(HttpResponseStatus.INTERNAL_SERVER_ERROR, Exceptions.handle(Templates.LOG, t));
+            return DispatchDecision.DONE;
+        }
+
+        response.named(uri.substring(uri.lastIndexOf('/') + 1)).file(file);
+        return DispatchDecision.DONE;
+    }
+
+    /**
+     * Ensures that an up-to-date CSS file exists for the given SCSS file.
+     * <p>
+     * Compilation is single-flight per output file: if several requests hit an outdated stylesheet at once, only
+     * one of them compiles it, while the others wait and then use the result.
+     *
+     * @param uri     the URI of the requested CSS file
+     * @param scssUri the URI of the SCSS file to compile
+     * @return the file which contains the compiled CSS
+     * @throws IOException in case the stylesheet cannot be compiled or written
+     */
+    private File ensureCompiledSASS(String uri, String scssUri) throws IOException {
+        String scopeId = UserContext.getCurrentScope().getScopeId();
         String cacheKey = scopeId + "-" + Files.toSaneFileName(uri.substring(1)).orElse("");
         File file = new File(getCacheDirFile(), cacheKey);
+        if (!isSASSOutdated(cacheKey, file)) {
+            return file;
+        }
 
-        if (Sirius.isStartedAsTest() || Sirius.isDev() || !file.exists() || file.lastModified() < resource.get()
-                                                                                                          .getLastModified()) {
-            try {
-                compileSASS(scssUri, file);
-            } catch (Exception t) {
-                Files.delete(file);
-                ctx.respondWith().error(HttpResponseStatus.INTERNAL_SERVER_ERROR, Exceptions.handle(Templates.LOG, t));
-                return DispatchDecision.DONE;
+        synchronized (sassLocks.computeIfAbsent(cacheKey, ignored -> new Object())) {
+            // Another thread might have compiled the sheet while we were waiting for the lock...
+            if (isSASSOutdated(cacheKey, file)) {
+                compileSASS(scssUri, cacheKey, file);
             }
         }
 
-        response.named(uri.substring(uri.lastIndexOf('/') + 1)).file(file);
-        return DispatchDecision.DONE;
+        return file;
+    }
+
+    /**
+     * Determines if the given compiled stylesheet has to be re-compiled.
+     * <p>
+     * This is the case if the file doesn't exist, if it hasn't been compiled since the system was started (as we
+     * then don't know its dependencies) or if one of the sheets which were imported while compiling it has changed.
+     *
+     * @param cacheKey the cache key of the compiled sheet
+     * @param file     the file which contains the compiled CSS
+     * @return <tt>true</tt> if the file has to be re-compiled, <tt>false</tt> otherwise
+     */
+    private boolean isSASSOutdated(String cacheKey, File file) {
+        CompiledSheet compiledSheet = compiledSheets.get(cacheKey);
+        if (compiledSheet == null || !file.exists()) {
+            return true;
+        }
+
+        return compiledSheet.dependencies()
+                            .stream()
+                            .anyMatch(dependency -> dependency.getLastModified() > compiledSheet.compiledAt());
+    }
+
+    /**
+     * Records when a stylesheet was compiled and which sheets were imported while doing so.
+     *
+     * @param compiledAt   the timestamp when the compilation started
+     * @param dependencies all resources which were imported to generate the sheet
+     */
+    private record CompiledSheet(long compiledAt, List<Resource> dependencies) {
     }
 
     /*
-     * Subclass of generator which takes care of proper logging
+     * Subclass of generator which takes care of proper logging and records all imported sheets
      */
     private class SIRIUSGenerator extends Generator {
 
+        private final List<Resource> dependencies = new ArrayList<>();
+
         @Override
         public void debug(String message) {
             SASS_LOG.FINE(message);
@@ -232,14 +369,16 @@ public class AssetsDispatcher implements WebDispatcher {
         protected InputStream resolveIntoStream(String sheet) throws IOException {
             Optional<Resource> res = resources.resolve(sheet);
             if (res.isPresent()) {
+                dependencies.add(res.get());
                 return res.get().getUrl().openStream();
             }
             return null;
         }
     }
 
-    private void compileSASS(String scssUri, File file) throws IOException {
+    private void compileSASS(String scssUri, String cacheKey, File file) throws IOException {
         Resources.LOG.FINE("Compiling: " + scssUri);
+        long compiledAt = System.currentTimeMillis();
         SIRIUSGenerator gen = new SIRIUSGenerator();
         gen.importStylesheet(scssUri);
 
@@ -251,21 +390,71 @@ public class AssetsDispatcher implements WebDispatcher {
         }
 
         gen.compile();
-        try (FileWriter writer = new FileWriter(file, false)) {
-            // Let the content compressor take care of minifying the CSS
-            Output out = new Output(writer, false);
-            gen.generate(out);
+
+        // We write into a temporary file and move it into place afterwards, so that a concurrent request
+        // never observes a partially written stylesheet...
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            try (FileWriter writer = new FileWriter(tempFile, false)) {
+                // Let the content compressor take care of minifying the CSS
+                Output out = new Output(writer, false);
+                gen.generate(out);
+            }
+            java.nio.file.Files.move(tempFile.toPath(),
+                                     file.toPath(),
+                                     StandardCopyOption.REPLACE_EXISTING,
+                                     StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.delete(tempFile);
+        }
+
+        compiledSheets.put(cacheKey, new CompiledSheet(compiledAt, Collections.unmodifiableList(gen.dependencies)));
+    }
+
+    @Override
+    public int getPriority() {
+        return PriorityCollector.DEFAULT_PRIORITY - 10;
+    }
+
+    @Override
+    public void started() {
+        if (sassWarmup) {
+            tasks.defaultExecutor().fork(this::compileKnownStylesheets);
+        }
+    }
+
+    /**
+     * Compiles all stylesheets listed in <tt>assets.warmup.stylesheets</tt>.
+     * <p>
+     * This is invoked in the background on startup (if enabled), so that no user request has to wait for the
+     * SASS compiler.
+     */
+    private void compileKnownStylesheets() {
+        for (String uri : sassWarmupStylesheets) {
+            try {
+                String scssUri = uri.substring(0, uri.length() - 4) + ".scss";
+                if (resources.resolve(scssUri).isPresent()) {
+                    ensureCompiledSASS(uri, scssUri);
+                }
+            } catch (Exception e) {
+                Exceptions.handle()
+                          .to(SASS_LOG)
+                          .error(e)
+                          .withSystemErrorMessage("Failed to pre-compile the stylesheet %s: %s (%s)", uri)
+                          .handle();
+            }
         }
     }
 
     /**
      * Flushes all cached and pre-computed scss / css files.
      * <p>
-     * This can be used in environments where the scss files change due to included files. This isn't detected by the
-     * framework, as we only check the main file.
+     * Note that changes of imported files are detected automatically. Still, this can be used to enforce a
+     * re-compilation of all stylesheets.
      */
     public void flushCompiledSCSS() {
         try {
+            compiledSheets.clear();
             Arrays.stream(getCacheDirFile().listFiles())
                   .filter(f -> f.getName().endsWith(".css"))
                   .forEach(File::delete);
@@ -0,0 +1,222 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.web.http;
+
+import sirius.kernel.commons.Strings;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Represents a single range requested via a <tt>Range</tt> header.
+ *
+ * @param start the first byte of the range (inclusive)
+ * @param end   the last byte of the range (inclusive)
+ */
+record ByteRange(long start, long end) {
+
+    private static final String BYTES_UNIT = "bytes=";
+    private static final Pattern RANGE_SPEC = Pattern.compile("(\\d+)?-(\\d+)?");
+    private static final String CRLF = "\r\n";
+
+    /**
+     * Contains the content type of a response containing several ranges.
+     */
+    static final String MULTIPART_BYTERANGES = "multipart/byteranges; boundary=";
+
+    /**
+     * Returns the number of bytes covered by this range.
+     *
+     * @return the length of the range
+     */
+    long length() {
+        return end - start + 1;
+    }
+
+    /**
+     * Creates the value for a <tt>Content-Range</tt> header.
+     *
+     * @param availableLength the total length of the content
+     * @return the value to use as <tt>Content-Range</tt> header
+     */
+    String toContentRange(long availableLength) {
+        return "bytes " + start + "-" + end + "/" + availableLength;
+    }
+
+    /**
+     * Creates a random boundary to separate the parts of a <tt>multipart/byteranges</tt> response.
+     *
+     * @return a new boundary
+     */
+    static String createBoundary() {
+        return Strings.generateCode(32);
+    }
+
+    /**
+     * Creates the header which precedes the contents of this range in a <tt>multipart/byteranges</tt> response.
+     *
+     * @param boundary        the boundary which separates the parts
+     * @param contentType     the content type of the whole content
+     * @param availableLength the total length of the content
+     * @return the header of the part for this range
+     */
+    String toPartHeader(String boundary, String contentType, long availableLength) {
+        return CRLF
+               + "--"
+               + boundary
+               + CRLF
+               + "Content-Type: "
+               + contentType
+               + CRLF
+               + "Content-Range: "
+               + toContentRange(availableLength)
+               + CRLF
+               + CRLF;
+    }
+
+    /**
+     * Creates the trailer which terminates a <tt>multipart/byteranges</tt> response.
+     *
+     * @param boundary the boundary which separates the parts
+     * @return the final delimiter of the response
+     */
+    static String toTrailer(String boundary) {
+        return CRLF + "--" + boundary + "--" + CRLF;
+    }
+
+    /**
+     * Computes the total length of a <tt>multipart/byteranges</tt> response.
+     *
+     * @param ranges          the ranges to send
+     * @param boundary        the boundary which separates the parts
+     * @param contentType     the content type of the whole content
+     * @param availableLength the total length of the content
+     * @return the number of bytes which will be sent
+     */
+    static long computeMultipartLength(List<ByteRange> ranges,
+                                       String boundary,
+                                       String contentType,
+                                       long availableLength) {
+        long result = toTrailer(boundary).length();
+        for (ByteRange range : ranges) {
+            result += range.toPartHeader(boundary, contentType, availableLength)
+                           .getBytes(StandardCharsets.UTF_8).length + range.length();
+        }
+
+        return result;
+    }
+
+    /**
+     * Parses the given <tt>Range</tt> header.
+     * <p>
+     * Ranges which end beyond the available data are truncated and overlapping or adjacent ranges are coalesced
+     * (sorted by their start) as proposed by RFC 7233. If the header contains more than the given number of ranges,
+     * it is ignored and the whole content is to be sent, so that a client cannot force us to send an absurd amount
+     * of tiny parts.
+     *
+     * @param header          the header to parse
+     * @param availableLength the total length of the content
+     * @param maxRanges       the maximal number of ranges to accept
+     * @return the list of ranges to send. If the list is empty, the whole content is to be sent
+     * @throws IllegalArgumentException if the header is malformed or none of the ranges can be satisfied
+     */
+    static List<ByteRange> parse(@Nullable String header, long availableLength, int maxRanges) {
+        if (Strings.isEmpty(header)) {
+            return Collections.emptyList();
+        }
+        if (!header.startsWith(BYTES_UNIT)) {
+            throw new IllegalArgumentException(Strings.apply("Range does not match the expected format: %s", header));
+        }
+
+        String[] specs = header.substring(BYTES_UNIT.length()).split(",");
+        if (specs.length > maxRanges) {
+            return Collections.emptyList();
+        }
+
+        List<ByteRange> ranges = new ArrayList<>(specs.length);
+        for (String spec : specs) {
+            Matcher matcher = RANGE_SPEC.matcher(spec.trim());
+            if (!matcher.matches() || (Strings.isEmpty(matcher.group(1)) && Strings.isEmpty(matcher.group(2)))) {
+                throw new IllegalArgumentException(Strings.apply("Range does not match the expected format: %s",
+                                                                 header));
+            }
+            if (isInverted(matcher)) {
+                // As demanded by RFC 7233, a syntactically invalid range leads to ignoring the whole header...
+                return Collections.emptyList();
+            }
+
+            ByteRange range = parseSatisfiableRange(matcher, availableLength);
+            if (range != null) {
+                ranges.add(range);
+            }
+        }
+
+        if (ranges.isEmpty()) {
+            throw new IllegalArgumentException(Strings.apply("None of the ranges can be satisfied: %s", header));
+        }
+
+        return coalesce(ranges);
+    }
+
+    private static boolean isInverted(Matcher matcher) {
+        return Strings.isFilled(matcher.group(1))
+               && Strings.isFilled(matcher.group(2))
+               && Long.parseLong(matcher.group(2)) < Long.parseLong(matcher.group(1));
+    }
+
+    @Nullable
+    private static ByteRange parseSatisfiableRange(Matcher matcher, long availableLength) {
+        if (availableLength == 0) {
+            return null;
+        }
+
+        if (Strings.isEmpty(matcher.group(1))) {
+            long suffixLength = Long.parseLong(matcher.group(2));
+            if (suffixLength == 0) {
+                return null;
+            }
+            return new ByteRange(Math.max(0, availableLength - suffixLength), availableLength - 1);
+        }
+
+        long start = Long.parseLong(matcher.group(1));
+        if (start >= availableLength) {
+            return null;
+        }
+        long end = Strings.isFilled(matcher.group(2)) ? Long.parseLong(matcher.group(2)) : availableLength - 1;
+
+        return new ByteRange(start, Math.min(end, availableLength - 1));
+    }
+
+    private static List<ByteRange> coalesce(List<ByteRange> ranges) {
+        if (ranges.size() == 1) {
+            return ranges;
+        }
+
+        ranges.sort(Comparator.comparingLong(ByteRange::start));
+        List<ByteRange> result = new ArrayList<>(ranges.size());
+        ByteRange current = ranges.get(0);
+        for (ByteRange next : ranges.subList(1, ranges.size())) {
+            if (next.start() <= current.end() + 1) {
+                current = new ByteRange(current.start(), Math.max(current.end(), next.end()));
+            } else {
+                result.add(current);
+                current = next;
+            }
+        }
+        result.add(current);
+
+        return result;
+    }
+}
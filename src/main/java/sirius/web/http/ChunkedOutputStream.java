@@ -9,17 +9,20 @@
 package sirius.web.http;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
 import io.netty.handler.codec.http.DefaultHttpContent;
 import io.netty.handler.codec.http.DefaultLastHttpContent;
 import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
-import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.LastHttpContent;
 import sirius.kernel.Sirius;
 import sirius.kernel.commons.Strings;
+import sirius.kernel.di.std.ConfigValue;
 import sirius.kernel.health.Exceptions;
 
 import java.io.IOException;
@@ -28,14 +31,23 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * Provides an adapter from {@link OutputStream} to an underlying channel using a buffer.
+ * <p>
+ * If the whole response fits into the buffer, it is sent as a single response. In this case, an <tt>ETag</tt> is
+ * computed from the contents (if <tt>http.etags.bufferedResponses</tt> is enabled), so that clients which poll the
+ * same URL over and over again receive a 304 (NOT_MODIFIED) as long as the contents don't change.
  */
 public class ChunkedOutputStream extends OutputStream {
+
+    @ConfigValue("http.etags.bufferedResponses")
+    private static boolean computeETags;
+
     private final Response response;
     private final String contentType;
     private final HttpResponseStatus status;
     private volatile boolean open;
     private volatile boolean contentionControl;
     private ByteBuf buffer;
+    private WorkerCompressor compressor;
 
     protected ChunkedOutputStream(Response response, String contentType, HttpResponseStatus status) {
         this.response = response;
@@ -70,10 +82,15 @@ public class ChunkedOutputStream extends OutputStream {
             if (last) {
                 return;
             }
+        } else if (compressor != null && !last) {
+            buffer = compressor.encode(buffer);
         }
 
         if (last) {
             completeRequest();
+        } else if (!buffer.isReadable()) {
+            // The compressor is still collecting data...
+            buffer.release();
         } else {
             try {
                 Object message = new DefaultHttpContent(buffer);
@@ -109,6 +126,15 @@ public class ChunkedOutputStream extends OutputStream {
     }
 
     private void completeRequest() {
+        if (compressor != null) {
+            CompositeByteBuf remainingContent = Unpooled.compositeBuffer();
+            if (buffer != null) {
+                remainingContent.addComponent(true, compressor.encode(buffer));
+            }
+            remainingContent.addComponent(true, compressor.finish());
+            buffer = remainingContent;
+            compressor = null;
+        }
         if (buffer != null) {
             response.complete(response.ctx.writeAndFlush(new DefaultLastHttpContent(buffer)));
         } else {
@@ -123,6 +149,7 @@ public class ChunkedOutputStream extends OutputStream {
                 buffer.release();
                 buffer = null;
             }
+            releaseCompressor();
             throw Exceptions.createHandled().withSystemErrorMessage("Channel was closed").handle();
         }
     }
@@ -138,19 +165,76 @@ public class ChunkedOutputStream extends OutputStream {
             response.setContentDisposition(response.name, response.download);
         }
         if (last) {
+            if (handleIfNoneMatch()) {
+                return;
+            }
             ByteBuf initialBuffer = buffer;
             if (initialBuffer == null) {
                 initialBuffer = Unpooled.EMPTY_BUFFER;
             }
+            // Note that the content length is set by createFullResponse, as the content might be compressed...
             HttpResponse res = response.createFullResponse(status, true, initialBuffer);
-            HttpUtil.setContentLength(res, initialBuffer.readableBytes());
             response.complete(response.commit(res));
         } else {
+            setupCompression();
             HttpResponse res = response.createChunkedResponse(status, true);
             response.commit(res, false);
         }
     }
 
+    /*
+     * Determines if the response is compressed on this thread (see WorkerCompressor). The first chunk is used as
+     * sample - if it compresses poorly, the whole response is sent uncompressed.
+     */
+    private void setupCompression() {
+        // The total size of the response is unknown, but as it doesn't fit into a single buffer, it is considered large
+        compressor = WorkerCompressor.create(response, contentType, Long.MAX_VALUE);
+        if (compressor == null) {
+            return;
+        }
+
+        int sampleSize = buffer.readableBytes();
+        ByteBuf compressedSample = compressor.encode(buffer.retainedDuplicate());
+        if (WorkerCompressor.isPoorlyCompressed(sampleSize, compressedSample.readableBytes())) {
+            compressedSample.release();
+            releaseCompressor();
+            response.applyContentEncoding(null);
+            return;
+        }
+
+        buffer.release();
+        buffer = compressedSample;
+        response.applyContentEncoding(compressor.getEncoding());
+    }
+
+    private void releaseCompressor() {
+        if (compressor != null) {
+            compressor.release();
+            compressor = null;
+        }
+    }
+
+    /*
+     * Computes an entity tag for the buffered content (if possible) and completes the request with a 304 if the
+     * client already has the same content.
+     */
+    private boolean handleIfNoneMatch() {
+        if (!computeETags
+            || buffer == null
+            || !HttpResponseStatus.OK.equals(status)
+            || !HttpMethod.GET.equals(response.wc.getRequest().method())) {
+            return false;
+        }
+
+        if (!response.handleIfNoneMatch(Response.computeETag(ByteBufUtil.getBytes(buffer)), 0)) {
+            return false;
+        }
+
+        buffer.release();
+        buffer = null;
+        return true;
+    }
+
     @Override
     public void flush() throws IOException {
         flushBuffer(false);
@@ -189,6 +273,23 @@ public class ChunkedOutputStream extends OutputStream {
         buffer.writeBytes(b, off, len);
     }
 
+    /**
+     * Discards all buffered content without sending it.
+     * <p>
+     * Once discarded, all further writes are ignored.
+     */
+    public void discard() {
+        if (!open) {
+            return;
+        }
+        open = false;
+        if (buffer != null) {
+            buffer.release();
+            buffer = null;
+        }
+        releaseCompressor();
+    }
+
     @Override
     public void close() throws IOException {
         if (!open) {
@@ -198,9 +299,12 @@ public class ChunkedOutputStream extends OutputStream {
         super.close();
         if (response.ctx.channel().isOpen()) {
             flushBuffer(true);
-        } else if (buffer != null) {
-            buffer.release();
-            buffer = null;
+        } else {
+            if (buffer != null) {
+                buffer.release();
+                buffer = null;
+            }
+            releaseCompressor();
         }
     }
 }
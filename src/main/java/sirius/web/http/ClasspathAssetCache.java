@@ -0,0 +1,235 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.web.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import sirius.kernel.Startable;
+import sirius.kernel.async.CallContext;
+import sirius.kernel.cache.Cache;
+import sirius.kernel.cache.CacheManager;
+import sirius.kernel.commons.Files;
+import sirius.kernel.commons.Hasher;
+import sirius.kernel.commons.Tuple;
+import sirius.kernel.di.std.ConfigValue;
+import sirius.kernel.di.std.Register;
+import sirius.kernel.health.Exceptions;
+import sirius.kernel.info.Product;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+
+/**
+ * Materializes classpath resources which reside in jar files, so that these can be sent using zero-copy.
+ * <p>
+ * Sending a jar entry requires to inflate its contents for each request, which costs CPU and prevents the usage of
+ * a {@link io.netty.channel.DefaultFileRegion}. Therefore, each entry is extracted once (on its first access) into
+ * a local directory and then sent via {@link SendFile}. The file name is derived from the jar, the entry name and
+ * its timestamp so that an updated jar will never serve outdated content.
+ * <p>
+ * Very small entries (see <tt>http.assets.inMemoryLimit</tt>) are kept in memory instead, as a single write of a
+ * buffer is cheaper than opening a file for each request. The LRU cache used (<tt>http-assets</tt>) ensures that
+ * only hot entries are kept around.
+ * <p>
+ * For each entry, a strong entity tag is computed from its contents, so that conditional requests can be answered
+ * without any I/O.
+ */
+@Register(classes = {ClasspathAssetCache.class, Startable.class})
+public class ClasspathAssetCache implements Startable {
+
+    @ConfigValue("http.assets.extractJarEntries")
+    private boolean enabled;
+
+    @ConfigValue("http.assets.inMemoryLimit")
+    private long inMemoryLimit;
+
+    @ConfigValue("http.generated-directory")
+    private String cacheDir;
+
+    private File extractionDir;
+
+    /**
+     * Contains the contents of small entries. We use unreleasable heap buffers here, as the cache might drop an entry
+     * at any time without notifying anyone - each response writes a duplicate of the shared buffer.
+     */
+    private final Cache<String, Tuple<ByteBuf, String>> inMemoryAssets = CacheManager.createLocalCache("http-assets");
+
+    /**
+     * Contains the entity tags (content hashes) of all extracted files.
+     */
+    private final Map<String, String> extractedETags = new ConcurrentHashMap<>();
+
+    /**
+     * Contains a lock per key to ensure that each entry is only extracted once at a time.
+     */
+    private final Map<String, Object> extractionLocks = new ConcurrentHashMap<>();
+
+    /**
+     * Represents an extracted entry, which is either present as file or as in-memory buffer.
+     *
+     * @param file         the extracted file or <tt>null</tt> if the entry is kept in memory
+     * @param content      the contents of the entry or <tt>null</tt> if it has been extracted into a file
+     * @param fileName     the name of the entry, used to determine the content type
+     * @param etag         the entity tag, which is derived from the contents of the entry
+     * @param lastModified the last modification timestamp of the entry
+     */
+    record ExtractedAsset(@Nullable File file,
+                          @Nullable ByteBuf content,
+                          String fileName,
+                          String etag,
+                          long lastModified) {
+    }
+
+    @Override
+    public int getPriority() {
+        return 100;
+    }
+
+    @Override
+    public void started() {
+        if (!enabled) {
+            return;
+        }
+
+        // Entries extracted by a previous run are most probably outdated anyway...
+        File[] outdatedFiles = getExtractionDir().listFiles();
+        if (outdatedFiles != null) {
+            for (File file : outdatedFiles) {
+                if (!file.delete()) {
+                    WebServer.LOG.FINE("Cannot delete outdated asset: %s", file.getAbsolutePath());
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines if jar entries should be extracted.
+     *
+     * @return <tt>true</tt> if jar entries are extracted, <tt>false</tt> otherwise
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Fetches the extracted version of the given jar entry.
+     *
+     * @param connection the connection pointing to the jar entry
+     * @return the extracted entry or <tt>null</tt> if the entry cannot be extracted (e.g. if it is a directory)
+     * @throws IOException in case of an error while reading or extracting the entry
+     */
+    @Nullable
+    ExtractedAsset fetch(JarURLConnection connection) throws IOException {
+        JarEntry entry = connection.getJarEntry();
+        if (entry == null || entry.isDirectory()) {
+            return null;
+        }
+
+        String fileName = new File(entry.getName()).getName();
+        String key = Hasher.sha1()
+                           .hash(connection.getJarFileURL().toString())
+                           .hash(entry.getName())
+                           .hash(String.valueOf(entry.getTime()))
+                           .toHexString();
+
+        if (entry.getSize() >= 0 && entry.getSize() <= inMemoryLimit) {
+            Tuple<ByteBuf, String> content = inMemoryAssets.get(key, ignored -> readIntoBuffer(connection));
+            return new ExtractedAsset(null,
+                                      content.getFirst().duplicate(),
+                                      fileName,
+                                      content.getSecond(),
+                                      entry.getTime());
+        }
+
+        File file = new File(getExtractionDir(), key + "_" + fileName);
+        if (!file.exists()) {
+            synchronized (extractionLocks.computeIfAbsent(key, ignored -> new Object())) {
+                try {
+                    if (!file.exists()) {
+                        extractedETags.put(key, extract(connection, file, entry.getTime()));
+                    }
+                } finally {
+                    extractionLocks.remove(key);
+                }
+            }
+        }
+
+        String etag = extractedETags.computeIfAbsent(key, ignored -> Response.computeETag(file));
+        return new ExtractedAsset(file, null, fileName, etag, file.lastModified());
+    }
+
+    private Tuple<ByteBuf, String> readIntoBuffer(JarURLConnection connection) {
+        try (InputStream input = connection.getInputStream()) {
+            byte[] content = input.readAllBytes();
+            return Tuple.create(Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(content).asReadOnly()),
+                                Response.computeETag(content));
+        } catch (IOException e) {
+            throw Exceptions.handle()
+                            .to(WebServer.LOG)
+                            .error(e)
+                            .withSystemErrorMessage("Cannot read the resource %s: %s (%s)", connection.getURL())
+                            .handle();
+        }
+    }
+
+    /*
+     * Extracts the given entry into the given file and returns the entity tag computed from its contents.
+     */
+    private String extract(JarURLConnection connection, File file, long lastModified) throws IOException {
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        MessageDigest digest = createDigest();
+        try (InputStream input = new DigestInputStream(connection.getInputStream(), digest)) {
+            java.nio.file.Files.copy(input, tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (lastModified > 0 && !tempFile.setLastModified(lastModified)) {
+            WebServer.LOG.FINE("Cannot set the last modification timestamp of: %s", tempFile.getAbsolutePath());
+        }
+        java.nio.file.Files.move(tempFile.toPath(),
+                                 file.toPath(),
+                                 StandardCopyOption.ATOMIC_MOVE,
+                                 StandardCopyOption.REPLACE_EXISTING);
+
+        return "\"" + HexFormat.of().formatHex(digest.digest()) + "\"";
+    }
+
+    private MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw Exceptions.handle(WebServer.LOG, e);
+        }
+    }
+
+    private File getExtractionDir() {
+        if (extractionDir == null) {
+            File dir = new File(System.getProperty("java.io.tmpdir"),
+                                Files.toSaneFileName(Product.getProduct().getName()).orElse("sirius")
+                                + "_"
+                                + Files.toSaneFileName(CallContext.getNodeName()).orElse("node")
+                                + "_"
+                                + cacheDir
+                                + "_assets");
+            dir.mkdirs();
+            extractionDir = dir;
+        }
+
+        return extractionDir;
+    }
+}
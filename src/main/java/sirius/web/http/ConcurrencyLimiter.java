@@ -0,0 +1,270 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.web.http;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import sirius.kernel.di.std.ConfigValue;
+import sirius.kernel.di.std.Register;
+import sirius.kernel.health.metrics.MetricProvider;
+import sirius.kernel.health.metrics.MetricsCollector;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of requests being processed or queued by the {@link DispatcherPipeline}.
+ * <p>
+ * The fixed queue of the <tt>webserver</tt> executor accepts a backlog of slow requests which are then served far too
+ * late, while a burst of fast requests might be rejected. Therefore, this limiter adapts the number of requests in
+ * flight using an AIMD (additive increase, multiplicative decrease) scheme: Once the queue time of a request exceeds
+ * <tt>http.limiter.targetQueueTime</tt> or the recent response latency rises well above its long-term average, the
+ * limit is decreased by <tt>http.limiter.backoffRatio</tt>. Otherwise, it is slowly increased again as long as the
+ * limit is actually utilized.
+ * <p>
+ * Requests exceeding the limit are rejected right away. Additionally, requests which waited longer than
+ * <tt>http.limiter.maxQueueTime</tt> for a worker thread are shed, as the client has most probably given up anyway.
+ * In both cases, a 503 along with a <tt>Retry-After</tt> header is sent.
+ */
+@Register(classes = {ConcurrencyLimiter.class, MetricProvider.class})
+public class ConcurrencyLimiter implements MetricProvider {
+
+    /**
+     * Limits the number of decreases, so that a single burst of slow requests doesn't collapse the limit at once.
+     */
+    private static final long DECREASE_INTERVAL_MILLIS = 100;
+
+    /**
+     * Determines how fast the short-term latency follows the measured values.
+     */
+    private static final double SHORT_TERM_WEIGHT = 0.1;
+
+    /**
+     * Determines how fast the long-term latency follows the measured values.
+     */
+    private static final double LONG_TERM_WEIGHT = 0.01;
+
+    @ConfigValue("http.limiter.enabled")
+    private boolean enabled;
+
+    @ConfigValue("http.limiter.initialLimit")
+    private int initialLimit;
+
+    @ConfigValue("http.limiter.minLimit")
+    private int minLimit;
+
+    @ConfigValue("http.limiter.maxLimit")
+    private int maxLimit;
+
+    @ConfigValue("http.limiter.backoffRatio")
+    private double backoffRatio;
+
+    @ConfigValue("http.limiter.latencyTolerance")
+    private double latencyTolerance;
+
+    @ConfigValue("http.limiter.targetQueueTime")
+    private Duration targetQueueTime;
+
+    @ConfigValue("http.limiter.maxQueueTime")
+    private Duration maxQueueTime;
+
+    @ConfigValue("http.limiter.retryAfter")
+    private Duration retryAfter;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong shedRequests = new AtomicLong();
+    private volatile double limit = -1;
+    private double shortTermLatency;
+    private double longTermLatency;
+    private long lastDecrease;
+
+    /**
+     * Determines if the limiter is active.
+     *
+     * @return <tt>true</tt> if requests are limited, <tt>false</tt> otherwise
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the current limit of requests in flight.
+     *
+     * @return the current limit
+     */
+    public int getLimit() {
+        if (limit < 0) {
+            limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        }
+
+        return (int) limit;
+    }
+
+    /**
+     * Returns the number of requests currently being queued or processed.
+     *
+     * @return the number of requests in flight
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Returns the number of requests which have been shed since the system was started.
+     *
+     * @return the number of shed requests
+     */
+    public long getShedRequests() {
+        return shedRequests.get();
+    }
+
+    /**
+     * Tries to admit the given request.
+     * <p>
+     * If the request is admitted, {@link #release(WebContext)} has to be invoked once it has been processed (this
+     * also happens once the request is {@link WebContext#release() released}). Otherwise, a 503 has already been
+     * sent.
+     *
+     * @param webContext the request to admit
+     * @return <tt>true</tt> if the request may be processed, <tt>false</tt> if it has been rejected
+     */
+    public boolean tryAcquire(WebContext webContext) {
+        if (!enabled) {
+            return true;
+        }
+
+        if (inFlight.incrementAndGet() > getLimit()) {
+            inFlight.decrementAndGet();
+            shed(webContext);
+            return false;
+        }
+
+        webContext.admittedByLimiter.set(true);
+        return true;
+    }
+
+    /**
+     * Sheds the given request if it has been queued longer than permitted.
+     * <p>
+     * This is invoked once a worker thread picked up the request. Note that {@link #release(WebContext)} still has
+     * to be invoked for a shed request.
+     *
+     * @param webContext   the request to check
+     * @param queuedMillis the time the request waited for a worker thread
+     * @return <tt>true</tt> if the request has been shed, <tt>false</tt> if it can be processed
+     */
+    public boolean shedIfQueuedTooLong(WebContext webContext, long queuedMillis) {
+        if (!enabled || maxQueueTime.isZero() || queuedMillis <= maxQueueTime.toMillis()) {
+            return false;
+        }
+
+        shed(webContext);
+        return true;
+    }
+
+    /**
+     * Rejects the given request by sending a 503 along with a <tt>Retry-After</tt> header.
+     * <p>
+     * This is also used if the executor of a {@link Lane} is overloaded.
+     *
+     * @param webContext the request to reject
+     */
+    public void shed(WebContext webContext) {
+        shedRequests.incrementAndGet();
+        webContext.respondWith()
+                  .addHeader(HttpHeaderNames.RETRY_AFTER, Math.max(1, retryAfter.getSeconds()))
+                  .error(HttpResponseStatus.SERVICE_UNAVAILABLE, "Request dropped - System overload!");
+    }
+
+    /**
+     * Releases a previously admitted request and adapts the limit based on the measured queue time and latency.
+     * <p>
+     * Note that only requests which went through the regular dispatching (and not long-running or pre-dispatched
+     * ones, like uploads) are used to adapt the limit. Releasing a request more than once, or releasing a request
+     * which hasn't been admitted, has no effect.
+     *
+     * @param webContext the request which has been processed
+     */
+    public void release(WebContext webContext) {
+        if (!webContext.admittedByLimiter.compareAndSet(true, false)) {
+            return;
+        }
+
+        int inFlightBeforeRelease = inFlight.getAndDecrement();
+        if (webContext.scheduled > 0 && !webContext.isLongCall()) {
+            long now = System.currentTimeMillis();
+            updateLimit(webContext.scheduled - webContext.started,
+                        now - webContext.started,
+                        inFlightBeforeRelease,
+                        now);
+        }
+    }
+
+    /**
+     * Releases a previously admitted request without using it to adapt the limit.
+     * <p>
+     * This is used for requests which are handed over to a {@link Lane} or which wait for an asynchronous result
+     * (e.g. of a remote service). These no longer occupy a thread of the <tt>webserver</tt> executor and lanes are
+     * limited by their own pool and queue. Also, their (potentially long) run or wait time would otherwise be taken as
+     * a sign of congestion and shrink the limit for all other requests.
+     *
+     * @param webContext the request which is handed over
+     */
+    public void handOver(WebContext webContext) {
+        if (webContext.admittedByLimiter.compareAndSet(true, false)) {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private synchronized void updateLimit(long queueMillis, long latencyMillis, int currentInFlight, long now) {
+        shortTermLatency = shortTermLatency == 0 ?
+                           latencyMillis :
+                           shortTermLatency + SHORT_TERM_WEIGHT * (latencyMillis - shortTermLatency);
+        longTermLatency = longTermLatency == 0 ?
+                          latencyMillis :
+                          longTermLatency + LONG_TERM_WEIGHT * (latencyMillis - longTermLatency);
+
+        double currentLimit = getLimit();
+        if (isCongested(queueMillis)) {
+            if (now - lastDecrease >= DECREASE_INTERVAL_MILLIS) {
+                lastDecrease = now;
+                limit = Math.max(minLimit, currentLimit * backoffRatio);
+            }
+        } else if (currentInFlight * 2 >= currentLimit) {
+            limit = Math.min(maxLimit, currentLimit + 1);
+        }
+    }
+
+    private boolean isCongested(long queueMillis) {
+        if (queueMillis > targetQueueTime.toMillis()) {
+            return true;
+        }
+
+        return latencyTolerance > 0 && longTermLatency > 0 && shortTermLatency > longTermLatency * latencyTolerance;
+    }
+
+    @Override
+    public void gather(MetricsCollector collector) {
+        if (!enabled) {
+            return;
+        }
+
+        collector.metric("http_concurrency_limit",
+                         "http-concurrency-limit",
+                         "HTTP Concurrency Limit",
+                         getLimit(),
+                         null);
+        collector.differentialMetric("http_shed_requests",
+                                     "http-shed-requests",
+                                     "HTTP Shed Requests",
+                                     shedRequests.get(),
+                                     "/min");
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.web.http;
+
+import com.aayushatharva.brotli4j.encoder.Encoder;
+import io.netty.channel.ChannelHandler;
+import io.netty.handler.codec.compression.Brotli;
+import io.netty.handler.codec.compression.BrotliEncoder;
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.compression.ZlibWrapper;
+import io.netty.handler.codec.compression.Zstd;
+import io.netty.handler.codec.compression.ZstdEncoder;
+import sirius.kernel.commons.Strings;
+import sirius.kernel.commons.Value;
+import sirius.kernel.di.std.ConfigValue;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Lists the content encodings supported to compress responses.
+ * <p>
+ * Next to <tt>gzip</tt> and <tt>deflate</tt>, <tt>br</tt> (Brotli) and <tt>zstd</tt> (Zstandard) are supported if the
+ * respective native libraries (<tt>brotli4j</tt> and <tt>zstd-jni</tt>) are present. The encoding to use is
+ * negotiated by {@link #negotiate(String)} based on the <tt>Accept-Encoding</tt> header of the request and the
+ * encodings enabled in <tt>http.compression.encodings</tt>.
+ */
+enum ContentEncoding {
+
+    BROTLI("br"), ZSTD("zstd"), GZIP("gzip"), DEFLATE("deflate");
+
+    private static final int MAX_ZLIB_LEVEL = 9;
+    private static final int MAX_BROTLI_LEVEL = 11;
+    private static final int MAX_ZSTD_LEVEL = 22;
+    private static final String WILDCARD = "*";
+    private static final String QUALITY_PREFIX = "q=";
+
+    @ConfigValue("http.compression.encodings")
+    private static List<String> enabledEncodings;
+
+    @ConfigValue("http.compression.level")
+    private static int defaultLevel;
+
+    @ConfigValue("http.compression.brotliLevel")
+    private static int brotliLevel;
+
+    @ConfigValue("http.compression.zstdLevel")
+    private static int zstdLevel;
+
+    private final String name;
+
+    ContentEncoding(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of the encoding as used in the <tt>Accept-Encoding</tt> and <tt>Content-Encoding</tt> headers.
+     *
+     * @return the name of the encoding
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Determines if the encoding can be used (the required native library is present).
+     *
+     * @return <tt>true</tt> if the encoding can be used, <tt>false</tt> otherwise
+     */
+    boolean isAvailable() {
+        try {
+            return switch (this) {
+                case BROTLI -> Brotli.isAvailable();
+                case ZSTD -> Zstd.isAvailable();
+                default -> true;
+            };
+        } catch (LinkageError e) {
+            // The optional dependency isn't present at all...
+            return false;
+        }
+    }
+
+    /**
+     * Creates an encoder which compresses with the given level.
+     * <p>
+     * The level is given in the range of <tt>gzip</tt> (1..9) and used as is for <tt>gzip</tt> and <tt>deflate</tt>.
+     * For Brotli and Zstandard, the configured levels are used and scaled down accordingly if a reduced level
+     * (compared to <tt>http.compression.level</tt>) is requested.
+     *
+     * @param level the level to use
+     * @return a new encoder which can be put into an {@link io.netty.channel.embedded.EmbeddedChannel}
+     */
+    ChannelHandler createEncoder(int level) {
+        return switch (this) {
+            case BROTLI -> new BrotliEncoder(new Encoder.Parameters().setQuality(scale(level,
+                                                                                          brotliLevel,
+                                                                                          MAX_BROTLI_LEVEL)));
+            case ZSTD -> new ZstdEncoder(scale(level, zstdLevel, MAX_ZSTD_LEVEL));
+            case GZIP -> ZlibCodecFactory.newZlibEncoder(ZlibWrapper.GZIP, limitZlibLevel(level));
+            case DEFLATE -> ZlibCodecFactory.newZlibEncoder(ZlibWrapper.ZLIB, limitZlibLevel(level));
+        };
+    }
+
+    /**
+     * Determines the level passed to the zlib encoder.
+     * <p>
+     * As the requested level is already given in the range of <tt>gzip</tt>, it is only limited to the valid range.
+     *
+     * @param level the requested level
+     * @return the level to use for <tt>gzip</tt> and <tt>deflate</tt>
+     */
+    static int limitZlibLevel(int level) {
+        return Math.max(1, Math.min(MAX_ZLIB_LEVEL, level));
+    }
+
+    /**
+     * Scales the configured level of an encoding according to the requested level.
+     *
+     * @param level           the requested level (in the range of <tt>gzip</tt>)
+     * @param configuredLevel the level configured for the encoding
+     * @param maxLevel        the maximal level supported by the encoding
+     * @return the level to use
+     */
+    static int scale(int level, int configuredLevel, int maxLevel) {
+        int effectiveLevel = configuredLevel;
+        if (defaultLevel > 0 && level < defaultLevel) {
+            effectiveLevel = (int) Math.round((double) configuredLevel * level / defaultLevel);
+        }
+
+        return Math.max(1, Math.min(maxLevel, effectiveLevel));
+    }
+
+    /**
+     * Selects the encoding to use for the given <tt>Accept-Encoding</tt> header.
+     * <p>
+     * The encoding with the highest quality value (q) is chosen. If several encodings have the same quality, the
+     * order of <tt>http.compression.encodings</tt> decides. Encodings with a quality of 0 are never used and a
+     * wildcard (<tt>*</tt>) applies to all encodings which aren't listed explicitly.
+     *
+     * @param acceptEncoding the header sent by the client
+     * @return the encoding to use or <tt>null</tt> if the response has to be sent uncompressed
+     */
+    @Nullable
+    static ContentEncoding negotiate(@Nullable String acceptEncoding) {
+        if (Strings.isEmpty(acceptEncoding)) {
+            return null;
+        }
+
+        ContentEncoding bestEncoding = null;
+        double bestQuality = 0;
+        for (String enabledEncoding : enabledEncodings) {
+            ContentEncoding encoding = byName(enabledEncoding);
+            if (encoding != null && encoding.isAvailable()) {
+                double quality = determineQuality(acceptEncoding, encoding.name);
+                if (quality > bestQuality) {
+                    bestEncoding = encoding;
+                    bestQuality = quality;
+                }
+            }
+        }
+
+        return bestEncoding;
+    }
+
+    @Nullable
+    private static ContentEncoding byName(String name) {
+        for (ContentEncoding encoding : values()) {
+            if (encoding.name.equalsIgnoreCase(name)) {
+                return encoding;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Determines the quality value of the given encoding within the given header.
+     *
+     * @param acceptEncoding the header to parse
+     * @param encoding       the encoding to search
+     * @return the quality of the encoding (0 if it isn't acceptable)
+     */
+    static double determineQuality(String acceptEncoding, String encoding) {
+        double wildcardQuality = 0;
+        for (String entry : acceptEncoding.split(",")) {
+            String[] parts = entry.split(";");
+            String token = parts[0].trim();
+            double quality = parseQuality(parts);
+            if (token.equalsIgnoreCase(encoding)) {
+                return quality;
+            }
+            if (WILDCARD.equals(token)) {
+                wildcardQuality = quality;
+            }
+        }
+
+        return wildcardQuality;
+    }
+
+    private static double parseQuality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith(QUALITY_PREFIX)) {
+                return Value.of(parameter.substring(QUALITY_PREFIX.length())).asDouble(0);
+            }
+        }
+
+        return 1;
+    }
+}
@@ -26,6 +26,8 @@ import java.util.List;
  * <p>
  * Used by {@link WebServerHandler} to send a request through all dispatchers until it is handled. Next to
  * a simple iteration, a dispatcher can always restart the pipeline to perform a "server sided redirect".
+ * <p>
+ * Each request has to be admitted by the {@link ConcurrencyLimiter} before it is handed over to the executor.
  */
 @Register(classes = DispatcherPipeline.class)
 public class DispatcherPipeline {
@@ -53,6 +55,9 @@ public class DispatcherPipeline {
     @Part
     private Tasks tasks;
 
+    @Part
+    private ConcurrencyLimiter limiter;
+
     /**
      * Dispatches the given request.
      *
@@ -60,18 +65,27 @@ public class DispatcherPipeline {
      */
     public void dispatch(WebContext ctx) {
         ctx.started = System.currentTimeMillis();
+        if (!limiter.tryAcquire(ctx)) {
+            return;
+        }
+
         tasks.executor(EXECUTOR_WEBSERVER)
              .dropOnOverload(() -> handleDrop(ctx))
              .fork(() -> dispatch(ctx, CallContext.getCurrent().get(TaskContext.class)));
     }
 
     private void handleDrop(WebContext ctx) {
-        ctx.respondWith().error(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Request dropped - System overload!");
+        limiter.release(ctx);
+        limiter.shed(ctx);
     }
 
     private void dispatch(WebContext webContext, TaskContext context) {
         try {
             webContext.scheduled = System.currentTimeMillis();
+            if (limiter.shedIfQueuedTooLong(webContext, webContext.scheduled - webContext.started)) {
+                return;
+            }
+
             int leftTries = MAX_RESTARTS_PER_REQUEST * dispatchers.size();
             int index = 0;
             while (index < dispatchers.size()) {
@@ -95,6 +109,20 @@ public class DispatcherPipeline {
             }
         } catch (Exception e) {
             handleInternalServerError(webContext, e);
+        } finally {
+            releaseIfHandled(webContext);
+        }
+    }
+
+    /*
+     * Releases the request from the limiter, if it has been handled by the current thread. Otherwise, the request is
+     * still in flight and is released once the response has been completed (see WebContext.release). Requests handed
+     * over to a lane have already been released (see ConcurrencyLimiter.handOver). Long calls (e.g. event streams) are
+     * released right away, as they would otherwise occupy the limit for as long as the client stays connected.
+     */
+    private void releaseIfHandled(WebContext webContext) {
+        if (webContext.responseCompleted || webContext.isLongCall()) {
+            limiter.release(webContext);
         }
     }
 
@@ -117,9 +145,13 @@ public class DispatcherPipeline {
             for (WebDispatcher webDispatcher : dispatchers) {
                 Callback<WebContext> handler = webDispatcher.preparePreDispatch(webContext);
                 if (handler != null) {
+                    if (!limiter.tryAcquire(webContext)) {
+                        return true;
+                    }
+                    long queuedSince = System.currentTimeMillis();
                     tasks.executor(EXECUTOR_WEBSERVER)
                          .dropOnOverload(() -> handleDrop(webContext))
-                         .fork(() -> executePreDispatching(webContext, webDispatcher, handler));
+                         .fork(() -> executePreDispatching(webContext, webDispatcher, handler, queuedSince));
 
                     return true;
                 }
@@ -131,12 +163,21 @@ public class DispatcherPipeline {
         return false;
     }
 
-    private void executePreDispatching(WebContext webContext, WebDispatcher dispatcher, Callback<WebContext> handler) {
+    private void executePreDispatching(WebContext webContext,
+                                       WebDispatcher dispatcher,
+                                       Callback<WebContext> handler,
+                                       long queuedSince) {
         try {
+            if (limiter.shedIfQueuedTooLong(webContext, System.currentTimeMillis() - queuedSince)) {
+                return;
+            }
+
             CallContext.getCurrent().get(TaskContext.class).setSubSystem(dispatcher.getClass().getSimpleName());
             handler.invoke(webContext);
         } catch (Exception e) {
             handleInternalServerError(webContext, e);
+        } finally {
+            releaseIfHandled(webContext);
         }
     }
 }
@@ -0,0 +1,276 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.web.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.LastHttpContent;
+import sirius.kernel.commons.Strings;
+import sirius.kernel.di.std.ConfigValue;
+import sirius.kernel.health.Exceptions;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Sends <a href="https://html.spec.whatwg.org/multipage/server-sent-events.html">server-sent events</a> to the client.
+ * <p>
+ * Created via {@link Response#sse()}, this commits a chunked <tt>text/event-stream</tt> response and then writes each
+ * event as a separate chunk. As no thread is blocked while the stream is open, events can be pushed to a large number
+ * of clients from any thread (e.g. a listener of a message queue).
+ * <p>
+ * Heartbeats (comments) are sent by the event loop of the connection if no event was sent within
+ * <tt>http.sse.heartbeatInterval</tt>, so that proxies don't close the connection. If the client doesn't keep up
+ * reading (the channel isn't writable), {@link #send(String, String, String)} drops the event and returns
+ * <tt>false</tt>. Clients which reconnect, send the last event id they received, which can be obtained via
+ * {@link #getLastEventId()} or {@link #ifResumed(Consumer)} to replay missed events.
+ */
+public class EventStream {
+
+    /**
+     * Contains the content type of an event stream.
+     */
+    public static final String TEXT_EVENT_STREAM = "text/event-stream";
+
+    /**
+     * Contains the header sent by clients which reconnect to an event stream.
+     */
+    public static final String HEADER_LAST_EVENT_ID = "Last-Event-ID";
+
+    private static final String HEARTBEAT = ":\n\n";
+
+    @ConfigValue("http.sse.heartbeatInterval")
+    private static Duration heartbeatInterval;
+
+    @ConfigValue("http.sse.retry")
+    private static Duration reconnectDelay;
+
+    private final Response response;
+    private final Channel channel;
+    private final AtomicBoolean open = new AtomicBoolean(true);
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private volatile long lastWrite;
+    private ScheduledFuture<?> heartbeat;
+    private Runnable closeHandler;
+
+    protected EventStream(Response response) {
+        this.response = response;
+        this.channel = response.ctx.channel();
+    }
+
+    /**
+     * Commits the response and starts the heartbeat.
+     */
+    protected void start() {
+        response.wc.markAsLongCall();
+        response.setHeader(HttpHeaderNames.CONTENT_TYPE, TEXT_EVENT_STREAM);
+        response.setHeader(HttpHeaderNames.CACHE_CONTROL, "no-cache");
+        // Compressing the stream would delay events until the encoder emits a block...
+        response.applyContentEncoding(null);
+        // An event stream is only ended by closing the connection, which also supports HTTP/1.0 clients...
+        HttpResponse res = response.createChunkedResponse(HttpResponseStatus.OK, false);
+        response.commit(res, false);
+
+        StringBuilder preamble = new StringBuilder();
+        if (reconnectDelay != null && !reconnectDelay.isZero()) {
+            preamble.append("retry: ").append(reconnectDelay.toMillis()).append("\n\n");
+        } else {
+            preamble.append(HEARTBEAT);
+        }
+        write(preamble.toString());
+
+        channel.closeFuture().addListener((ChannelFutureListener) ignored -> handleClose());
+        if (heartbeatInterval != null && !heartbeatInterval.isZero()) {
+            long intervalMillis = heartbeatInterval.toMillis();
+            heartbeat = channel.eventLoop()
+                               .scheduleAtFixedRate(this::sendHeartbeat,
+                                                    intervalMillis,
+                                                    intervalMillis,
+                                                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns the id of the last event received by the client, if it reconnects to the stream.
+     *
+     * @return the last event id sent by the client or <tt>null</tt> if this is a new stream
+     */
+    @Nullable
+    public String getLastEventId() {
+        return response.wc.getHeader(HEADER_LAST_EVENT_ID);
+    }
+
+    /**
+     * Invokes the given handler with the last event id if the client reconnects to the stream.
+     * <p>
+     * This can be used to replay all events which the client missed while being disconnected.
+     *
+     * @param resumeHandler the handler to invoke with the last event id known to the client
+     * @return the stream itself for fluent method calls
+     */
+    public EventStream ifResumed(Consumer<String> resumeHandler) {
+        String lastEventId = getLastEventId();
+        if (Strings.isFilled(lastEventId)) {
+            resumeHandler.accept(lastEventId);
+        }
+
+        return this;
+    }
+
+    /**
+     * Installs a handler which is invoked once the stream is closed (either by the client or by the server).
+     *
+     * @param closeHandler the handler to invoke
+     * @return the stream itself for fluent method calls
+     */
+    public EventStream onClose(Runnable closeHandler) {
+        this.closeHandler = closeHandler;
+        return this;
+    }
+
+    /**
+     * Determines if the stream is still open.
+     *
+     * @return <tt>true</tt> if events can be sent, <tt>false</tt> if the stream has been closed
+     */
+    public boolean isOpen() {
+        return open.get() && channel.isActive();
+    }
+
+    /**
+     * Determines if the client keeps up reading the events.
+     *
+     * @return <tt>true</tt> if events can be sent without being buffered, <tt>false</tt> otherwise
+     */
+    public boolean isWritable() {
+        return isOpen() && channel.isWritable();
+    }
+
+    /**
+     * Returns the number of events which have been dropped as the channel wasn't writable.
+     *
+     * @return the number of dropped events
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * Sends an unnamed event without an id.
+     *
+     * @param data the data of the event
+     * @return <tt>true</tt> if the event was sent, <tt>false</tt> if it was dropped
+     */
+    public boolean send(String data) {
+        return send(null, null, data);
+    }
+
+    /**
+     * Sends an event.
+     * <p>
+     * If the channel isn't writable, as the client doesn't keep up reading, the event is dropped, so that no unbounded
+     * amount of events piles up in memory. Use {@link #isWritable()} to skip computing events in this case.
+     *
+     * @param id    the id of the event which is reported as <tt>Last-Event-ID</tt> by a reconnecting client
+     * @param event the name of the event (which determines the listener to invoke on the client side)
+     * @param data  the data of the event. Multi-line data is split into several data lines
+     * @return <tt>true</tt> if the event was sent, <tt>false</tt> if it was dropped
+     */
+    public boolean send(@Nullable String id, @Nullable String event, String data) {
+        if (!isWritable()) {
+            droppedEvents.incrementAndGet();
+            return false;
+        }
+
+        StringBuilder message = new StringBuilder();
+        appendField(message, "id", id);
+        appendField(message, "event", event);
+        for (String line : data.split("\r\n|\r|\n", -1)) {
+            message.append("data: ").append(line).append('\n');
+        }
+        message.append('\n');
+
+        write(message.toString());
+        return true;
+    }
+
+    private void appendField(StringBuilder message, String field, @Nullable String value) {
+        if (Strings.isFilled(value)) {
+            if (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                throw new IllegalArgumentException(Strings.apply("The %s of an event must not contain a line break",
+                                                                 field));
+            }
+            message.append(field).append(": ").append(value).append('\n');
+        }
+    }
+
+    private void write(String message) {
+        lastWrite = System.currentTimeMillis();
+        ByteBuf content = ByteBufUtil.writeUtf8(channel.alloc(), message);
+        response.ctx.writeAndFlush(new DefaultHttpContent(content));
+    }
+
+    private void sendHeartbeat() {
+        if (!isOpen()) {
+            return;
+        }
+        if (System.currentTimeMillis() - lastWrite >= heartbeatInterval.toMillis() && channel.isWritable()) {
+            write(HEARTBEAT);
+        }
+    }
+
+    /**
+     * Closes the stream and completes the response.
+     */
+    public void close() {
+        if (!open.compareAndSet(true, false)) {
+            return;
+        }
+
+        stopHeartbeat();
+        if (channel.isActive()) {
+            response.complete(response.ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT));
+        }
+        invokeCloseHandler();
+    }
+
+    private void handleClose() {
+        if (open.compareAndSet(true, false)) {
+            stopHeartbeat();
+            invokeCloseHandler();
+        }
+    }
+
+    private void stopHeartbeat() {
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+        }
+    }
+
+    private void invokeCloseHandler() {
+        if (closeHandler != null) {
+            try {
+                closeHandler.run();
+            } catch (Exception e) {
+                Exceptions.handle(WebServer.LOG, e);
+            }
+        }
+    }
+}
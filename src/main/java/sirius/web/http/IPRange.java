@@ -40,6 +40,16 @@ public class IPRange {
      */
     private BigInteger mask = COMPLETE_MASK;
 
+    /**
+     * Contains the base address of this range as raw bytes (4 for IPv4, 16 for IPv6).
+     */
+    private byte[] address;
+
+    /**
+     * Contains the number of significant bits of {@link #address}.
+     */
+    private int prefixLength;
+
     /**
      * Contains a string representation of this range
      */
@@ -81,9 +91,14 @@ public class IPRange {
                 result.stringRepresentation = cidr;
                 String[] input = cidr.split("/");
                 boolean ip6 = cidr.contains(":");
-                result.baseIP = ipToInt(InetAddress.getByName(input[0]));
+                InetAddress baseAddress = InetAddress.getByName(input[0]);
+                result.baseIP = ipToInt(baseAddress);
+                result.address = baseAddress.getAddress();
+                result.prefixLength = result.address.length * Byte.SIZE;
                 if (input.length > 1) {
-                    result.mask = COMPLETE_MASK.shiftLeft((ip6 ? 128 : 32) - Integer.parseInt(input[1]));
+                    int bits = Integer.parseInt(input[1]);
+                    result.mask = COMPLETE_MASK.shiftLeft((ip6 ? 128 : 32) - bits);
+                    result.prefixLength = Math.max(0, Math.min(result.prefixLength, bits));
                 }
             }
         } catch (Exception e) {
@@ -116,6 +131,19 @@ public class IPRange {
         return baseIP.and(mask).and(COMPLETE_MASK).equals(ip.and(mask).and(COMPLETE_MASK));
     }
 
+    /*
+     * Adds this range to the matching trie of the given set.
+     */
+    private void addTo(RangeSet rangeSet) {
+        if (BigInteger.ZERO.equals(baseIP)) {
+            // Just like in matches, an empty base address accepts all addresses of both families...
+            rangeSet.ipv4.add(new byte[4], 0);
+            rangeSet.ipv6.add(new byte[16], 0);
+        } else {
+            rangeSet.trieFor(address).add(address, prefixLength);
+        }
+    }
+
     /*
      * Computes a RangeSet which only accepts localhost
      */
@@ -129,6 +157,7 @@ public class IPRange {
         // using static/lazy initializer magic...
         result.ranges.add(IPRange.parseRange("127.0.0.1"));
         result.ranges.add(IPRange.parseRange("0:0:0:0:0:0:0:1"));
+        result.compile();
         return result;
     }
 
@@ -152,6 +181,8 @@ public class IPRange {
             if (result.ranges.isEmpty()) {
                 // No rules were parsed -> accept everything with a fast ==
                 result.ranges = null;
+            } else {
+                result.compile();
             }
         }
         return result;
@@ -166,6 +197,9 @@ public class IPRange {
      * Represents a set of IP ranges.
      * <p>
      * Ranges can be specified as a list of CIDR sub nets, separated by a ",".
+     * <p>
+     * The ranges are compiled into a binary prefix trie per address family, so that checking an address takes at
+     * most one step per bit of the address - independent of the number of ranges.
      */
     public static class RangeSet {
 
@@ -174,6 +208,9 @@ public class IPRange {
          */
         private List<IPRange> ranges;
 
+        private final PrefixTrie ipv4 = new PrefixTrie();
+        private final PrefixTrie ipv6 = new PrefixTrie();
+
         /*
          * Use compile to create a set of ranges.
          */
@@ -191,13 +228,19 @@ public class IPRange {
             if (addr == null || ranges == null) {
                 return true;
             }
+
+            byte[] address = addr.getAddress();
+            return trieFor(address).contains(address);
+        }
+
+        private PrefixTrie trieFor(byte[] address) {
+            return address.length == 4 ? ipv4 : ipv6;
+        }
+
+        private void compile() {
             for (IPRange range : ranges) {
-                if (range.matches(addr)) {
-                    return true;
-                }
+                range.addTo(this);
             }
-
-            return false;
         }
 
         /**
@@ -0,0 +1,47 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.web.http;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Assigns a {@link sirius.web.controller.Controller} method (or all routes of a controller) to a named execution lane.
+ * <p>
+ * By default, all requests are handled by the <tt>webserver</tt> executor. Therefore, a few long-running routes
+ * (exports, reports) can occupy all of its threads so that even login pages or health checks time out. Routes
+ * which are assigned to a lane are handed over to the executor <tt>lane-NAME</tt> once they have been matched.
+ * As each executor has its own pool size and queue length (see <tt>async.executor</tt>), such routes are isolated
+ * from interactive and API traffic. If the queue of a lane is full, a 503 is sent.
+ */
+@Documented
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Lane {
+
+    /**
+     * Contains the prefix which is prepended to the name of the lane to determine the executor to use.
+     */
+    String EXECUTOR_PREFIX = "lane-";
+
+    /**
+     * Represents the lane which is intended for batch-style routes, like exports or reports.
+     */
+    String BATCH = "batch";
+
+    /**
+     * Determines the lane to use.
+     *
+     * @return the name of the lane which is used to determine the executor (<tt>lane-NAME</tt>)
+     */
+    String value();
+}
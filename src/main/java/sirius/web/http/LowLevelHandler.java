@@ -14,38 +14,16 @@ import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
 
-import java.net.InetSocketAddress;
-import java.net.SocketAddress;
-
 /**
  * Handler for low-level events in the HTTP pipeline.
  * <p>
- * Performs statistical tasks and performs basic filtering based on firewall rules.
+ * Performs statistical tasks. Note that connections are already filtered based on firewall rules by the
+ * {@link WebServerInitializer}, before this handler is installed.
  */
 @ChannelHandler.Sharable
 class LowLevelHandler extends ChannelDuplexHandler {
     static final LowLevelHandler INSTANCE = new LowLevelHandler();
 
-    @Override
-    public void connect(ChannelHandlerContext ctx,
-                        SocketAddress remoteAddress,
-                        SocketAddress localAddress,
-                        ChannelPromise future) throws Exception {
-        if (WebServer.connections.incrementAndGet() < 0) {
-            WebServer.connections.set(0);
-        }
-        IPRange.RangeSet filter = WebServer.getIPFilter();
-        if (!filter.isEmpty() && !filter.accepts(((InetSocketAddress) remoteAddress).getAddress())) {
-            if (WebServer.blocks.incrementAndGet() < 0) {
-                WebServer.blocks.set(0);
-            }
-            ctx.channel().close();
-            future.setSuccess();
-            return;
-        }
-        super.connect(ctx, remoteAddress, localAddress, future);
-    }
-
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
         if (msg instanceof ByteBuf) {
@@ -0,0 +1,522 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.web.http;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import sirius.kernel.commons.Strings;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Parses a <tt>multipart/form-data</tt> body while it is being received.
+ * <p>
+ * Regular requests are decoded completely by netty, which stores each part in memory or in a temporary file
+ * before the request is dispatched. Pre-dispatched routes can instead use this parser on the
+ * {@link InputStreamHandler} of the request (via {@link WebContext#getMultipartContent()}) to process one part after
+ * another as the data arrives, e.g. to pipe a file upload directly into its final storage:
+ * <pre>{@code
+ * MultipartStream multipart = webContext.getMultipartContent();
+ * MultipartStream.Part part;
+ * while ((part = multipart.nextPart()) != null) {
+ *     if (part.isFile()) {
+ *         part.computeDigest(MultipartStream.SHA_256);
+ *         storage.upload(part.getFilename(), part.getInputStream());
+ *         log(part.getDigest(MultipartStream.SHA_256));
+ *     }
+ * }
+ * }</pre>
+ * Only a fixed size buffer is used, independent of the size of the parts. Note that a part has to be read before the
+ * next one can be obtained - skipping to the next part discards all unread data of the current one.
+ */
+public class MultipartStream {
+
+    /**
+     * Contains the name of the SHA-256 digest algorithm.
+     */
+    public static final String SHA_256 = "SHA-256";
+
+    /**
+     * Contains the name of the MD5 digest algorithm.
+     */
+    public static final String MD5 = "MD5";
+
+    private static final int BUFFER_SIZE = 16384;
+    private static final int MAX_HEADERS_SIZE = 16384;
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final InputStream input;
+    private final byte[] delimiter;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int head;
+    private int tail;
+    private boolean eof;
+    private boolean finished;
+    private Part currentPart;
+    private byte[] skipBuffer;
+    private int dataEnd = -1;
+    private boolean delimiterFound;
+
+    /**
+     * Creates a new parser for the given input.
+     *
+     * @param input    the body of the request
+     * @param boundary the boundary which separates the parts (as given in the <tt>Content-Type</tt>)
+     */
+    public MultipartStream(InputStream input, String boundary) {
+        if (Strings.isEmpty(boundary) || boundary.length() > 200) {
+            throw new IllegalArgumentException("Invalid multipart boundary: " + boundary);
+        }
+
+        this.input = input;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+
+        // The first boundary isn't preceded by a line break, therefore we insert one and treat the preamble (which is
+        // most probably empty) like a part which is skipped...
+        this.buffer[0] = '\r';
+        this.buffer[1] = '\n';
+        this.tail = 2;
+        this.currentPart = new Part(Collections.emptyMap());
+    }
+
+    /**
+     * Extracts the boundary from the given <tt>Content-Type</tt> header.
+     *
+     * @param contentType the content type of the request
+     * @return the boundary or <tt>null</tt> if the content type doesn't describe a multipart body
+     */
+    @Nullable
+    public static String parseBoundary(@Nullable String contentType) {
+        if (contentType == null || !contentType.toLowerCase().startsWith("multipart/")) {
+            return null;
+        }
+
+        return parseParameters(contentType).get("boundary");
+    }
+
+    /**
+     * Skips all remaining data of the current part and returns the next one.
+     *
+     * @return the next part or <tt>null</tt> if all parts have been read
+     * @throws IOException in case of an IO error or a malformed body
+     */
+    @Nullable
+    public Part nextPart() throws IOException {
+        if (finished) {
+            return null;
+        }
+
+        currentPart.discard();
+        if (ensureAvailable(2) && buffer[head] == '-' && buffer[head + 1] == '-') {
+            finished = true;
+            currentPart = null;
+            return null;
+        }
+
+        // Skip the remainder of the boundary line (which may contain transport padding)...
+        readLine();
+        currentPart = new Part(readHeaders());
+        return currentPart;
+    }
+
+    private Map<String, String> readHeaders() throws IOException {
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        int headersSize = 0;
+        String line = readLine();
+        while (Strings.isFilled(line)) {
+            headersSize += line.length();
+            if (headersSize > MAX_HEADERS_SIZE) {
+                throw new IOException("The headers of a multipart part are too large.");
+            }
+
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+            }
+            line = readLine();
+        }
+
+        return headers;
+    }
+
+    private String readLine() throws IOException {
+        while (true) {
+            int end = indexOf(CRLF, head);
+            if (end >= 0) {
+                String line = new String(buffer, head, end - head, StandardCharsets.UTF_8);
+                head = end + CRLF.length;
+                return line;
+            }
+            if (head == 0 && tail == buffer.length) {
+                throw new IOException("A header line of a multipart part is too long.");
+            }
+            if (!fill()) {
+                throw new IOException("Unexpected end of the multipart body.");
+            }
+        }
+    }
+
+    /**
+     * Reads the data of the current part into the given array.
+     */
+    private int readPartData(byte[] target, int offset, int length) throws IOException {
+        while (true) {
+            if (dataEnd < 0) {
+                locateDataEnd();
+            }
+            if (head < dataEnd) {
+                int bytesRead = Math.min(length, dataEnd - head);
+                System.arraycopy(buffer, head, target, offset, bytesRead);
+                head += bytesRead;
+                return bytesRead;
+            }
+            if (delimiterFound) {
+                head += delimiter.length;
+                dataEnd = -1;
+                return -1;
+            }
+            if (!fill()) {
+                throw new IOException("Unexpected end of the multipart body.");
+            }
+        }
+    }
+
+    /**
+     * Determines up to which position the buffer contains data of the current part, so that the buffer is only
+     * scanned once and not for each read.
+     */
+    private void locateDataEnd() {
+        int delimiterIndex = indexOf(delimiter, head);
+        delimiterFound = delimiterIndex >= 0;
+        // If no delimiter was found, the end of the buffer might still contain the beginning of one...
+        dataEnd = delimiterFound ? delimiterIndex : Math.max(head, tail - delimiter.length + 1);
+    }
+
+    private boolean ensureAvailable(int bytes) throws IOException {
+        while (tail - head < bytes) {
+            if (!fill()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Moves the unread data to the start of the buffer and reads more data.
+     *
+     * @return <tt>true</tt> if data was read, <tt>false</tt> if the end of the input has been reached
+     */
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        dataEnd = -1;
+        if (head > 0) {
+            System.arraycopy(buffer, head, buffer, 0, tail - head);
+            tail -= head;
+            head = 0;
+        }
+
+        int bytesRead = input.read(buffer, tail, buffer.length - tail);
+        if (bytesRead < 0) {
+            eof = true;
+            return false;
+        }
+
+        tail += bytesRead;
+        return true;
+    }
+
+    private int indexOf(byte[] pattern, int from) {
+        int last = tail - pattern.length;
+        for (int index = from; index <= last; index++) {
+            if (buffer[index] == pattern[0] && matchesAt(pattern, index)) {
+                return index;
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean matchesAt(byte[] pattern, int index) {
+        for (int i = 1; i < pattern.length; i++) {
+            if (buffer[index + i] != pattern[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Parses the parameters of a header value like <tt>form-data; name="file"; filename="test.txt"</tt>.
+     */
+    private static Map<String, String> parseParameters(String headerValue) {
+        Map<String, String> result = new LinkedHashMap<>();
+        int index = headerValue.indexOf(';');
+        while (index >= 0 && index < headerValue.length()) {
+            int equals = headerValue.indexOf('=', index);
+            if (equals < 0) {
+                break;
+            }
+
+            String name = headerValue.substring(index + 1, equals).trim().toLowerCase();
+            StringBuilder value = new StringBuilder();
+            index = equals + 1;
+            boolean quoted = index < headerValue.length() && headerValue.charAt(index) == '"';
+            if (quoted) {
+                index++;
+            }
+            while (index < headerValue.length()) {
+                char current = headerValue.charAt(index);
+                if (quoted && current == '\\' && index + 1 < headerValue.length()) {
+                    value.append(headerValue.charAt(++index));
+                } else if (quoted ? current == '"' : current == ';') {
+                    break;
+                } else {
+                    value.append(current);
+                }
+                index++;
+            }
+
+            result.put(name, quoted ? value.toString() : value.toString().trim());
+            index = headerValue.indexOf(';', index);
+        }
+
+        return result;
+    }
+
+    /**
+     * Represents a single part of a multipart body.
+     * <p>
+     * The data of the part can be read via {@link #getInputStream()} until the next part is requested.
+     */
+    public class Part {
+
+        private final Map<String, String> headers;
+        private final Map<String, String> dispositionParameters;
+        private final Map<String, MessageDigest> digests = new LinkedHashMap<>();
+        private final Map<String, String> computedDigests = new LinkedHashMap<>();
+        private final InputStream inputStream = new PartInputStream();
+        private boolean completed;
+        private long size;
+
+        private Part(Map<String, String> headers) {
+            this.headers = headers;
+            String disposition = headers.get(HttpHeaderNames.CONTENT_DISPOSITION.toString());
+            this.dispositionParameters = disposition == null ? Collections.emptyMap() : parseParameters(disposition);
+        }
+
+        /**
+         * Returns the value of the given header of this part.
+         *
+         * @param name the name of the header
+         * @return the value of the header or <tt>null</tt> if it wasn't given
+         */
+        @Nullable
+        public String getHeader(String name) {
+            return headers.get(name);
+        }
+
+        /**
+         * Returns all headers of this part.
+         *
+         * @return all headers (with case-insensitive names)
+         */
+        public Map<String, String> getHeaders() {
+            return Collections.unmodifiableMap(headers);
+        }
+
+        /**
+         * Returns the name of the form field represented by this part.
+         *
+         * @return the name as given in the <tt>Content-Disposition</tt> or <tt>null</tt> if none was given
+         */
+        @Nullable
+        public String getName() {
+            return dispositionParameters.get("name");
+        }
+
+        /**
+         * Returns the name of the uploaded file.
+         *
+         * @return the filename as given in the <tt>Content-Disposition</tt> or <tt>null</tt> if this is no file
+         */
+        @Nullable
+        public String getFilename() {
+            String encodedFilename = dispositionParameters.get("filename*");
+            if (encodedFilename != null && encodedFilename.toUpperCase().startsWith("UTF-8''")) {
+                return URLDecoder.decode(encodedFilename.substring(7), StandardCharsets.UTF_8);
+            }
+
+            return dispositionParameters.get("filename");
+        }
+
+        /**
+         * Determines if this part represents a file upload.
+         *
+         * @return <tt>true</tt> if a filename was given, <tt>false</tt> otherwise
+         */
+        public boolean isFile() {
+            return getFilename() != null;
+        }
+
+        /**
+         * Returns the content type of this part.
+         *
+         * @return the content type or <tt>null</tt> if none was given
+         */
+        @Nullable
+        public String getContentType() {
+            return getHeader(HttpHeaderNames.CONTENT_TYPE.toString());
+        }
+
+        /**
+         * Computes a digest using the given algorithm for the data of this part while it is being read.
+         * <p>
+         * This has to be invoked before any data is read.
+         *
+         * @param algorithm the algorithm to use, e.g. {@link #SHA_256} or {@link #MD5}
+         * @return the part itself for fluent method calls
+         */
+        public Part computeDigest(String algorithm) {
+            if (size > 0) {
+                throw new IllegalStateException("A digest has to be requested before the data is read.");
+            }
+
+            digests.computeIfAbsent(algorithm, ignored -> createDigest(algorithm));
+            return this;
+        }
+
+        private MessageDigest createDigest(String algorithm) {
+            try {
+                return MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException("Unknown digest algorithm: " + algorithm, e);
+            }
+        }
+
+        /**
+         * Returns the digest computed for the data of this part.
+         *
+         * @param algorithm the algorithm which was passed to {@link #computeDigest(String)}
+         * @return the digest as hex string
+         * @throws IllegalStateException if the part hasn't been read completely or if no digest was requested
+         */
+        @Nonnull
+        public String getDigest(String algorithm) {
+            MessageDigest digest = digests.get(algorithm);
+            if (digest == null) {
+                throw new IllegalStateException("No digest was requested for: " + algorithm);
+            }
+            if (!completed) {
+                throw new IllegalStateException("The part has not been read completely.");
+            }
+
+            return computedDigests.computeIfAbsent(algorithm, ignored -> HexFormat.of().formatHex(digest.digest()));
+        }
+
+        /**
+         * Returns the number of bytes read for this part so far.
+         *
+         * @return the number of bytes read
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Returns the data of this part.
+         * <p>
+         * The stream ends once the end of the part has been reached. Note that the stream becomes invalid once the
+         * next part is requested.
+         *
+         * @return the data of this part as stream
+         */
+        public InputStream getInputStream() {
+            return inputStream;
+        }
+
+        /**
+         * Reads the data of this part as string.
+         * <p>
+         * This is intended for small form fields, as the whole value is loaded into the heap.
+         *
+         * @return the data of this part decoded as UTF-8
+         * @throws IOException in case of an IO error
+         */
+        public String getString() throws IOException {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        private void discard() throws IOException {
+            if (skipBuffer == null) {
+                skipBuffer = new byte[BUFFER_SIZE];
+            }
+            while (read(skipBuffer, 0, skipBuffer.length) >= 0) {
+                // Only skip the remaining data...
+            }
+        }
+
+        private int read(byte[] target, int offset, int length) throws IOException {
+            if (completed || currentPart != this) {
+                return -1;
+            }
+            if (length == 0) {
+                return 0;
+            }
+
+            int bytesRead = readPartData(target, offset, length);
+            if (bytesRead < 0) {
+                completed = true;
+                return -1;
+            }
+
+            size += bytesRead;
+            for (MessageDigest digest : digests.values()) {
+                digest.update(target, offset, bytesRead);
+            }
+
+            return bytesRead;
+        }
+
+        private class PartInputStream extends InputStream {
+
+            private final byte[] single = new byte[1];
+
+            @Override
+            public int read() throws IOException {
+                int bytesRead = Part.this.read(single, 0, 1);
+                return bytesRead < 0 ? -1 : single[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] target, int offset, int length) throws IOException {
+                return Part.this.read(target, offset, length);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return Strings.apply("Part: %s (%s)", getName(), getFilename());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.web.http;
+
+import java.util.Arrays;
+
+/**
+ * Represents a binary prefix trie which determines if an address is covered by one of a set of CIDR ranges.
+ * <p>
+ * The trie is stored in primitive arrays: The children of node <tt>n</tt> are located at <tt>2n</tt> (next bit
+ * is 0) and <tt>2n+1</tt> (next bit is 1). As the root is never a child, <tt>0</tt> marks a missing child. A lookup
+ * therefore takes at most one step per bit of the address (32 for IPv4, 128 for IPv6), independent of the number of
+ * ranges.
+ * <p>
+ * A trie only contains addresses of a single family (IPv4 or IPv6), as determined by the length of the addresses.
+ */
+class PrefixTrie {
+
+    private static final int INITIAL_NODES = 64;
+
+    private int[] children = new int[2 * INITIAL_NODES];
+    private boolean[] terminal = new boolean[INITIAL_NODES];
+    private int numberOfNodes = 1;
+
+    /**
+     * Adds the given range.
+     *
+     * @param address      the base address of the range (as returned by {@link java.net.InetAddress#getAddress()})
+     * @param prefixLength the number of significant bits of the address
+     */
+    void add(byte[] address, int prefixLength) {
+        int node = 0;
+        for (int bit = 0; bit < prefixLength; bit++) {
+            if (terminal[node]) {
+                // A shorter prefix already covers this range...
+                return;
+            }
+
+            int index = 2 * node + bitAt(address, bit);
+            if (children[index] == 0) {
+                // Create the node first, as this might replace the children array...
+                int child = createNode();
+                children[index] = child;
+            }
+            node = children[index];
+        }
+
+        terminal[node] = true;
+    }
+
+    private int createNode() {
+        if (numberOfNodes == terminal.length) {
+            terminal = Arrays.copyOf(terminal, terminal.length * 2);
+            children = Arrays.copyOf(children, children.length * 2);
+        }
+
+        return numberOfNodes++;
+    }
+
+    /**
+     * Determines if the given address is covered by one of the ranges in this trie.
+     *
+     * @param address the address to check (as returned by {@link java.net.InetAddress#getAddress()})
+     * @return <tt>true</tt> if the address is within one of the ranges, <tt>false</tt> otherwise
+     */
+    boolean contains(byte[] address) {
+        int node = 0;
+        int numberOfBits = address.length * Byte.SIZE;
+        for (int bit = 0; bit < numberOfBits; bit++) {
+            if (terminal[node]) {
+                return true;
+            }
+
+            node = children[2 * node + bitAt(address, bit)];
+            if (node == 0) {
+                return false;
+            }
+        }
+
+        return terminal[node];
+    }
+
+    /**
+     * Determines if no range has been added.
+     *
+     * @return <tt>true</tt> if the trie is empty, <tt>false</tt> otherwise
+     */
+    boolean isEmpty() {
+        return numberOfNodes == 1 && !terminal[0];
+    }
+
+    private static int bitAt(byte[] address, int bit) {
+        return (address[bit >> 3] >> (7 - (bit & 7))) & 1;
+    }
+}
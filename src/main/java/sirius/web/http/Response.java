@@ -9,6 +9,7 @@
 package sirius.web.http;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
@@ -36,10 +37,12 @@ import org.asynchttpclient.Dsl;
 import sirius.kernel.Sirius;
 import sirius.kernel.async.CallContext;
 import sirius.kernel.async.ExecutionPoint;
+import sirius.kernel.commons.Hasher;
 import sirius.kernel.commons.MultiMap;
 import sirius.kernel.commons.Processor;
 import sirius.kernel.commons.Strings;
 import sirius.kernel.commons.Value;
+import sirius.kernel.di.std.ConfigValue;
 import sirius.kernel.di.std.Part;
 import sirius.kernel.health.Exceptions;
 import sirius.kernel.health.HandledException;
@@ -60,15 +63,20 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
+import java.net.JarURLConnection;
 import java.net.URLConnection;
 import java.nio.channels.ClosedChannelException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Consumer;
@@ -170,6 +178,11 @@ public class Response {
      */
     protected boolean responseChunked = false;
 
+    /*
+     * Contains the output stream created by this response (if any)
+     */
+    private ChunkedOutputStream outputStream;
+
     @Part
     private static Resources resources;
 
@@ -179,6 +192,15 @@ public class Response {
     @Part
     private static Tagliatelle engine;
 
+    @Part
+    private static ClasspathAssetCache classpathAssetCache;
+
+    /**
+     * Contains the maximal number of ranges accepted in a <tt>Range</tt> header.
+     */
+    @ConfigValue("http.maxRanges")
+    protected static int maxRanges;
+
     protected static AsyncHttpClient asyncClient;
 
     /**
@@ -196,12 +218,52 @@ public class Response {
      * Takes care of the keep alive logic, cookies and other default headers
      */
     protected DefaultFullHttpResponse createFullResponse(HttpResponseStatus status, boolean keepalive, ByteBuf buffer) {
-        DefaultFullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, buffer);
+        ByteBuf content = compressOnWorker(status, buffer);
+        DefaultFullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, content);
         setupResponse(status, keepalive, response);
-        response.headers().set(HttpHeaderNames.CONTENT_LENGTH, buffer.readableBytes());
+        response.headers().set(HttpHeaderNames.CONTENT_LENGTH, content.readableBytes());
         return response;
     }
 
+    /*
+     * Compresses the given content on the current (worker) thread if enabled (see WorkerCompressor).
+     */
+    private ByteBuf compressOnWorker(HttpResponseStatus status, ByteBuf buffer) {
+        if (status.code() < 200
+            || HttpResponseStatus.NO_CONTENT.equals(status)
+            || HttpResponseStatus.PARTIAL_CONTENT.equals(status)
+            || HttpResponseStatus.NOT_MODIFIED.equals(status)) {
+            return buffer;
+        }
+
+        WorkerCompressor compressor =
+                WorkerCompressor.create(this, headers().get(HttpHeaderNames.CONTENT_TYPE), buffer.readableBytes());
+        if (compressor == null) {
+            return buffer;
+        }
+
+        ByteBuf result = compressor.compressFully(buffer);
+        applyContentEncoding(result != buffer ? compressor.getEncoding() : null);
+        return result;
+    }
+
+    /*
+     * Marks the response as compressed with the given encoding. If null is given, the response is marked as
+     * uncompressed, so that the compressor within the pipeline doesn't try to compress it again.
+     */
+    protected void applyContentEncoding(@Nullable String encoding) {
+        if (encoding == null) {
+            setHeader(HttpHeaderNames.CONTENT_ENCODING, HttpHeaderValues.IDENTITY);
+        } else {
+            setHeader(HttpHeaderNames.CONTENT_ENCODING, encoding);
+            addHeader(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT_ENCODING);
+            String etag = headers().get(HttpHeaderNames.ETAG);
+            if (etag != null) {
+                setHeader(HttpHeaderNames.ETAG, appendContentCoding(etag, encoding));
+            }
+        }
+    }
+
     /*
      * Creates and initializes a HttpResponse which result will follow as byte buffers
      * Takes care of the keep alive logic, cookies and other default headers
@@ -274,7 +336,7 @@ public class Response {
             return;
         }
 
-        response.headers().set(HttpHeaderNames.VARY, HttpHeaderNames.ORIGIN);
+        response.headers().add(HttpHeaderNames.VARY, HttpHeaderNames.ORIGIN);
         String requestedOrigin = wc.getHeader(HttpHeaderNames.ORIGIN);
         if (Strings.isFilled(requestedOrigin)) {
             response.headers().set(HttpHeaderNames.ACCESS_CONTROL_ALLOW_ORIGIN, requestedOrigin);
@@ -565,6 +627,147 @@ public class Response {
         return false;
     }
 
+    /**
+     * Determines if the client already has the current version of the resource being delivered. If so, the request
+     * is auto-completed with a 304 status (NOT_MODIFIED).
+     * <p>
+     * The given entity tag is sent as <tt>ETag</tt> header in either case. If the request contains an
+     * <tt>If-None-Match</tt> header, it is compared against the given entity tag. Otherwise, we fall back to
+     * {@link #handleIfModifiedSince(long)} (as demanded by RFC 7232).
+     *
+     * @param etag                 the entity tag of the resource being delivered (including quotes). If <tt>null</tt>,
+     *                             only <tt>If-Modified-Since</tt> is checked
+     * @param lastModifiedInMillis the modification date of the resource being delivered
+     * @return <tt>true</tt> if the request was handled (a 304 was sent), <tt>false</tt> otherwise
+     */
+    public boolean handleIfNoneMatch(@Nullable String etag, long lastModifiedInMillis) {
+        String ifNoneMatch = getHeader(HttpHeaderNames.IF_NONE_MATCH);
+        if (Strings.isEmpty(etag)) {
+            return handleIfModifiedSince(lastModifiedInMillis);
+        }
+
+        addHeaderIfNotExists(HttpHeaderNames.ETAG, etag);
+        if (Strings.isEmpty(ifNoneMatch)) {
+            return handleIfModifiedSince(lastModifiedInMillis);
+        }
+
+        String matchingTag = findMatchingETag(ifNoneMatch, etag);
+        if (matchingTag == null) {
+            return false;
+        }
+
+        // If the client validated a compressed representation, we report its tag (including the content coding)...
+        if (!Strings.areEqual(matchingTag, etag)) {
+            setHeader(HttpHeaderNames.ETAG, matchingTag);
+        }
+        setDateAndCacheHeaders(lastModifiedInMillis, cacheSeconds == null ? HTTP_CACHE : cacheSeconds, isPrivate);
+        status(HttpResponseStatus.NOT_MODIFIED);
+        return true;
+    }
+
+    /**
+     * Determines if one of the given entity tags matches the expected one.
+     * <p>
+     * As demanded for <tt>If-None-Match</tt>, the weak comparison is used, therefore a <tt>W/</tt> prefix is ignored.
+     * Also, tags of compressed representations carry the content coding (see {@link #appendContentCoding(String,
+     * String)}), which is removed before comparing them.
+     *
+     * @param header the value of the <tt>If-None-Match</tt> header
+     * @param etag   the current entity tag of the resource
+     * @return <tt>true</tt> if the header contains the given tag or "*", <tt>false</tt> otherwise
+     */
+    protected static boolean matchesETag(String header, String etag) {
+        return findMatchingETag(header, etag) != null;
+    }
+
+    /*
+     * Returns the tag within the given header which matches the given etag (or the etag itself for "*").
+     */
+    @Nullable
+    private static String findMatchingETag(String header, String etag) {
+        String expectedTag = stripWeakPrefix(etag);
+        for (String tag : header.split(",")) {
+            String effectiveTag = tag.trim();
+            if ("*".equals(effectiveTag)) {
+                return etag;
+            }
+            if (expectedTag.equals(stripContentCoding(stripWeakPrefix(effectiveTag)))) {
+                return effectiveTag;
+            }
+        }
+
+        return null;
+    }
+
+    private static String stripWeakPrefix(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    /**
+     * Appends the given content coding to the given entity tag, e.g. <tt>"abc"</tt> becomes <tt>"abc-br"</tt>.
+     * <p>
+     * The same strong entity tag must not be used for representations with different content codings. Therefore,
+     * this is applied once a response is compressed.
+     *
+     * @param etag   the entity tag of the uncompressed content (including quotes)
+     * @param coding the content coding being applied
+     * @return the entity tag of the compressed representation
+     */
+    protected static String appendContentCoding(String etag, String coding) {
+        if (etag.length() < 2 || !etag.endsWith("\"")) {
+            return etag;
+        }
+
+        return etag.substring(0, etag.length() - 1) + "-" + coding + "\"";
+    }
+
+    private static String stripContentCoding(String etag) {
+        for (ContentEncoding encoding : ContentEncoding.values()) {
+            String suffix = "-" + encoding.getName() + "\"";
+            if (etag.endsWith(suffix)) {
+                return etag.substring(0, etag.length() - suffix.length()) + "\"";
+            }
+        }
+
+        return etag;
+    }
+
+    /**
+     * Computes a strong entity tag for the given content.
+     *
+     * @param content the content to compute the tag for
+     * @return the entity tag (including quotes) which can be used as <tt>ETag</tt> header
+     */
+    public static String computeETag(byte[] content) {
+        return "\"" + Hasher.sha1().hashBytes(content).toHexString() + "\"";
+    }
+
+    /**
+     * Computes an entity tag for the given file.
+     * <p>
+     * Similar to other web servers, this is derived from the file key (the inode on unix systems), the size and the
+     * last modification timestamp of the file, so that the file doesn't need to be read.
+     *
+     * @param file the file to compute the tag for
+     * @return the entity tag (including quotes) which can be used as <tt>ETag</tt> header
+     */
+    public static String computeETag(File file) {
+        Object fileKey = null;
+        try {
+            fileKey = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            Exceptions.ignore(e);
+        }
+
+        return "\""
+               + Integer.toHexString(Objects.hashCode(fileKey != null ? fileKey : file.getAbsolutePath()))
+               + "-"
+               + Long.toHexString(file.length())
+               + "-"
+               + Long.toHexString(file.lastModified())
+               + "\"";
+    }
+
     /**
      * Forces the use of a given name. This is also used to derive the mime type.
      *
@@ -815,8 +1018,7 @@ public class Response {
      */
     protected boolean canBeCompressed(String contentType) {
         String acceptEncoding = wc.getRequest().headers().get(HttpHeaderNames.ACCEPT_ENCODING);
-        if (acceptEncoding == null || (!acceptEncoding.contains(HttpHeaderValues.GZIP) && !acceptEncoding.contains(
-                HttpHeaderValues.DEFLATE))) {
+        if (ContentEncoding.negotiate(acceptEncoding) == null) {
             return false;
         }
         return MimeHelper.isCompressable(contentType);
@@ -962,11 +1164,30 @@ public class Response {
     /**
      * Sends the given resource (potentially from classpath) as result.
      * <p>
-     * This will support HTTP caching if enabled (default).
+     * This will support HTTP caching if enabled (default). Resources which are located in jar files are extracted
+     * by the {@link ClasspathAssetCache} (if enabled) so that these can be sent using zero-copy or from memory.
      *
      * @param urlConnection the connection to get the data from.
      */
     public void resource(URLConnection urlConnection) {
+        if (urlConnection instanceof JarURLConnection jarConnection && classpathAssetCache.isEnabled()) {
+            try {
+                ClasspathAssetCache.ExtractedAsset asset = classpathAssetCache.fetch(jarConnection);
+                if (asset != null && asset.file() != null) {
+                    addHeaderIfNotExists(HttpHeaderNames.ETAG, asset.etag());
+                    file(asset.file());
+                    return;
+                }
+                if (asset != null) {
+                    sendInMemoryAsset(asset);
+                    return;
+                }
+            } catch (Exception e) {
+                internalServerError("Resource to send: " + urlConnection.getURL().toString(), e);
+                return;
+            }
+        }
+
         try {
             long fileLength = urlConnection.getContentLength();
             addHeaderIfNotExists(HttpHeaderNames.CONTENT_LENGTH, fileLength);
@@ -1000,6 +1221,58 @@ public class Response {
         }
     }
 
+    private void sendInMemoryAsset(ClasspathAssetCache.ExtractedAsset asset) {
+        addHeaderIfNotExists(HttpHeaderNames.CONTENT_TYPE,
+                             MimeHelper.guessMimeType(name != null ? name : asset.fileName()));
+        if (handleIfNoneMatch(asset.etag(), asset.lastModified())) {
+            return;
+        }
+
+        setDateAndCacheHeaders(asset.lastModified(), cacheSeconds == null ? HTTP_CACHE : cacheSeconds, isPrivate);
+        if (name != null) {
+            setContentDisposition(name, download);
+        }
+        addHeaderIfNotExists(HttpHeaderNames.ACCEPT_RANGES, HttpHeaderValues.BYTES);
+
+        ByteBuf content = asset.content();
+        List<ByteRange> ranges;
+        try {
+            ranges = ByteRange.parse(getHeader(HttpHeaderNames.RANGE), content.readableBytes(), maxRanges);
+        } catch (IllegalArgumentException e) {
+            Exceptions.ignore(e);
+            setHeader(HttpHeaderNames.CONTENT_RANGE, "bytes */" + content.readableBytes());
+            error(HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE, "Cannot parse 'accept-ranges'.");
+            return;
+        }
+
+        if (ranges.isEmpty()) {
+            complete(commit(createFullResponse(HttpResponseStatus.OK, true, content)));
+        } else if (ranges.size() == 1) {
+            ByteRange range = ranges.get(0);
+            setHeader(HttpHeaderNames.CONTENT_RANGE, range.toContentRange(content.readableBytes()));
+            complete(commit(createFullResponse(HttpResponseStatus.PARTIAL_CONTENT,
+                                               true,
+                                               content.slice((int) range.start(), (int) range.length()))));
+        } else {
+            String contentType = headers().get(HttpHeaderNames.CONTENT_TYPE);
+            String boundary = ByteRange.createBoundary();
+            CompositeByteBuf multipartContent = Unpooled.compositeBuffer(ranges.size() * 2 + 1);
+            for (ByteRange range : ranges) {
+                multipartContent.addComponent(true,
+                                              Unpooled.copiedBuffer(range.toPartHeader(boundary,
+                                                                                       contentType,
+                                                                                       content.readableBytes()),
+                                                                    StandardCharsets.UTF_8));
+                multipartContent.addComponent(true, content.slice((int) range.start(), (int) range.length()));
+            }
+            multipartContent.addComponent(true,
+                                          Unpooled.copiedBuffer(ByteRange.toTrailer(boundary),
+                                                                StandardCharsets.UTF_8));
+            setHeader(HttpHeaderNames.CONTENT_TYPE, ByteRange.MULTIPART_BYTERANGES + boundary);
+            complete(commit(createFullResponse(HttpResponseStatus.PARTIAL_CONTENT, true, multipartContent)));
+        }
+    }
+
     /**
      * Sends an 401 UNAUTHORIZED response with a WWW-Authenticate header for the given realm.
      * <p>
@@ -1242,11 +1515,7 @@ public class Response {
 
     protected void sendTemplateContent(HttpResponseStatus status, String name, String content) {
         try {
-            if (name.endsWith("html")) {
-                setHeader(HttpHeaderNames.CONTENT_TYPE, CONTENT_TYPE_HTML);
-            } else {
-                setContentTypeHeader(name);
-            }
+            setTemplateContentTypeHeader(name);
             setDateAndCacheHeaders(System.currentTimeMillis(), cacheSeconds == null ? 0 : cacheSeconds, isPrivate);
             ByteBuf channelBuffer = wrapUTF8String(content);
             HttpResponse response = createFullResponse(status, true, channelBuffer);
@@ -1260,6 +1529,53 @@ public class Response {
         }
     }
 
+    private void setTemplateContentTypeHeader(String name) {
+        if (name.endsWith("html")) {
+            setHeader(HttpHeaderNames.CONTENT_TYPE, CONTENT_TYPE_HTML);
+        } else {
+            setContentTypeHeader(name);
+        }
+    }
+
+    /**
+     * Sends the given pre-rendered and already encoded content as response.
+     * <p>
+     * In contrast to {@link #template(HttpResponseStatus, Template, Object...)} this neither renders nor encodes
+     * anything, as the given array is directly wrapped into the response buffer. Therefore, this can be used to
+     * serve the output of constant templates which has been rendered once and then kept in a cache. Note that the
+     * given array is shared and must not be modified afterwards.
+     *
+     * @param status             the HTTP status to send
+     * @param name               the file name used to determine the content type
+     * @param content            the UTF-8 encoded content to send
+     * @param etag               the entity tag of the content (see {@link #computeETag(byte[])}) which is used to
+     *                           answer conditional requests. Can be <tt>null</tt> to only support
+     *                           <tt>If-Modified-Since</tt>
+     * @param lastModifiedMillis the timestamp when the content was last changed
+     */
+    public void preRendered(HttpResponseStatus status,
+                            String name,
+                            byte[] content,
+                            @Nullable String etag,
+                            long lastModifiedMillis) {
+        wc.enableTiming(null);
+        try {
+            if (HttpResponseStatus.OK.equals(status) && handleIfNoneMatch(etag, lastModifiedMillis)) {
+                return;
+            }
+            setTemplateContentTypeHeader(name);
+            setDateAndCacheHeaders(lastModifiedMillis, cacheSeconds == null ? 0 : cacheSeconds, isPrivate);
+            HttpResponse response = createFullResponse(status, true, Unpooled.wrappedBuffer(content));
+            complete(commit(response));
+        } catch (Exception e) {
+            throw Exceptions.handle()
+                            .to(WebServer.LOG)
+                            .error(e)
+                            .withSystemErrorMessage("Cannot send pre-rendered content: " + name)
+                            .handle();
+        }
+    }
+
     private Object[] fixParams(Object[] params) {
         if (params.length == 1 && params[0] instanceof Object[]) {
             return (Object[]) params[0];
@@ -1583,7 +1899,39 @@ public class Response {
             contentType = MimeHelper.guessMimeType(name);
         }
 
-        return new ChunkedOutputStream(this, contentType, status);
+        outputStream = new ChunkedOutputStream(this, contentType, status);
+        return outputStream;
+    }
+
+    /**
+     * Discards the output stream created by this response (if any) without sending its content.
+     * <p>
+     * This is used if a partially generated output is abandoned, e.g. to send an error instead.
+     */
+    public void discardOutputStream() {
+        if (outputStream != null) {
+            outputStream.discard();
+        }
+    }
+
+    /**
+     * Starts a stream of server-sent events.
+     * <p>
+     * The response is committed right away and events can then be sent (from any thread) via the returned
+     * {@link EventStream} until it is closed.
+     *
+     * @return the event stream used to send events to the client
+     */
+    public EventStream sse() {
+        if (wc.responseCommitted) {
+            throw Exceptions.createHandled()
+                            .withSystemErrorMessage("Response for %s was already committed!", wc.getRequestedURI())
+                            .handle();
+        }
+
+        EventStream eventStream = new EventStream(this);
+        eventStream.start();
+        return eventStream;
     }
 
     @Override
@@ -9,37 +9,59 @@
 package sirius.web.http;
 
 import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.SimpleKeyManagerFactory;
 import sirius.kernel.commons.Strings;
 import sirius.kernel.di.std.ConfigValue;
+import sirius.kernel.health.Exceptions;
 import sirius.kernel.health.Log;
 
 import javax.net.ssl.ExtendedSSLSession;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.ManagerFactoryParameters;
 import javax.net.ssl.SNIHostName;
 import javax.net.ssl.SNIServerName;
-import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.StandardConstants;
 import javax.net.ssl.X509ExtendedKeyManager;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.Socket;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.KeyStore;
 import java.security.Principal;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.List;
 
 /**
  * Creates a new pipeline for processing incoming requests of the HTTPS web server.
+ * <p>
+ * By default, the SSL engine of the JDK is used. If <tt>http.ssl.provider</tt> is set to <tt>OPENSSL</tt> and
+ * <tt>netty-tcnative</tt> (e.g. <tt>netty-tcnative-boringssl-static</tt>) is present on the classpath, OpenSSL or
+ * BoringSSL is used instead, which performs handshakes considerably faster. In both cases, certificates are
+ * selected via SNI and the session cache can be tuned to permit cheap session resumption. Session tickets keys can
+ * be provided (for OpenSSL only) so that all nodes behind a load balancer can resume each others sessions.
+ * <p>
+ * The keystore is checked for changes regularly (see {@link WebServer.KeystoreReloader}) so that renewed certificates
+ * are picked up without restarting the server.
  */
 class SSLWebServerInitializer extends WebServerInitializer {
 
-    private static final String[] EMPTY_STRING_ARRAY = new String[0];
-    private final SSLContext context;
+    private static final int TICKET_KEY_PART_LENGTH = 16;
+    private volatile SslContext context;
+    private volatile String keystoreState;
 
     @ConfigValue("http.ssl.alias")
     private static String defaultAlias;
@@ -59,6 +81,21 @@ class SSLWebServerInitializer extends WebServerInitializer {
     @ConfigValue("http.ssl.ciphers")
     private static List<String> ciphers;
 
+    @ConfigValue("http.ssl.reloadKeystore")
+    private static boolean reloadKeystore;
+
+    @ConfigValue("http.ssl.provider")
+    private static String provider;
+
+    @ConfigValue("http.ssl.sessionCacheSize")
+    private static long sessionCacheSize;
+
+    @ConfigValue("http.ssl.sessionTimeout")
+    private static Duration sessionTimeout;
+
+    @ConfigValue("http.ssl.ticketKeys")
+    private static List<String> ticketKeys;
+
     public static final Log LOG = Log.get("ssl");
 
     /**
@@ -165,7 +202,40 @@ class SSLWebServerInitializer extends WebServerInitializer {
         }
     }
 
+    /**
+     * Wraps the {@link SniKeyManager} so that it can be passed to a {@link SslContextBuilder}.
+     */
+    private static class SniKeyManagerFactory extends SimpleKeyManagerFactory {
+
+        private final KeyManager[] keyManagers;
+
+        SniKeyManagerFactory(SniKeyManager keyManager) {
+            this.keyManagers = new KeyManager[]{keyManager};
+        }
+
+        @Override
+        protected void engineInit(KeyStore keyStore, char[] password) {
+            // The key manager is already initialized...
+        }
+
+        @Override
+        protected void engineInit(ManagerFactoryParameters managerFactoryParameters) {
+            // The key manager is already initialized...
+        }
+
+        @Override
+        protected KeyManager[] engineGetKeyManagers() {
+            return keyManagers;
+        }
+    }
+
     SSLWebServerInitializer() throws Exception {
+        System.setProperty("jdk.tls.ephemeralDHKeySize", String.valueOf(ephemeralDHKeySize));
+        keystoreState = readKeystoreState();
+        context = loadContext();
+    }
+
+    private SslContext loadContext() throws Exception {
         KeyStore store = KeyStore.getInstance("JKS");
         try (InputStream is = Files.newInputStream(Paths.get(keystore))) {
             store.load(is, password.toCharArray());
@@ -182,28 +252,132 @@ class SSLWebServerInitializer extends WebServerInitializer {
         if (x509KeyManager == null) {
             throw new Exception("KeyManagerFactory did not create an X509ExtendedKeyManager");
         }
-        System.setProperty("jdk.tls.ephemeralDHKeySize", String.valueOf(ephemeralDHKeySize));
         SniKeyManager sniKeyManager = new SniKeyManager(x509KeyManager);
-        context = SSLContext.getInstance("TLS");
-        context.init(new KeyManager[]{sniKeyManager}, null, null);
+        return createContext(sniKeyManager);
     }
 
-    @Override
-    protected boolean isSSL() {
-        return true;
+    /*
+     * Determines the modification timestamp and size of the keystore. Note that symbolic links are followed, so that
+     * swapping a linked keystore (as done by container orchestrators) is also detected.
+     */
+    private String readKeystoreState() {
+        try {
+            Path path = Paths.get(keystore);
+            return Files.getLastModifiedTime(path).toMillis() + "/" + Files.size(path);
+        } catch (IOException e) {
+            Exceptions.ignore(e);
+            return null;
+        }
     }
 
-    @Override
-    public void initChannel(SocketChannel ch) throws Exception {
-        SSLEngine engine = context.createSSLEngine();
-        engine.setUseClientMode(false);
+    /**
+     * Reloads the keystore if it has changed since it was last loaded.
+     * <p>
+     * The new SSL context (along with its SNI mapping) is swapped in atomically and only used for new connections.
+     * Existing connections keep using their engine and session. If the keystore cannot be loaded (e.g. as it is
+     * only partially written), the current context remains active and loading is retried once the keystore changes
+     * again.
+     */
+    void reloadIfModified() {
+        if (!reloadKeystore) {
+            return;
+        }
+
+        String currentState = readKeystoreState();
+        if (currentState == null || Strings.areEqual(currentState, keystoreState)) {
+            return;
+        }
+
+        keystoreState = currentState;
+        try {
+            context = loadContext();
+            LOG.INFO("Reloaded the keystore %s. New connections will use the updated certificates.", keystore);
+        } catch (Exception e) {
+            Exceptions.handle()
+                      .to(LOG)
+                      .error(e)
+                      .withSystemErrorMessage("Cannot reload the keystore %s: %s (%s)", keystore)
+                      .handle();
+        }
+    }
+
+    private SslContext createContext(SniKeyManager sniKeyManager) throws Exception {
+        SslProvider sslProvider = determineProvider();
+        SslContextBuilder builder =
+                SslContextBuilder.forServer(new SniKeyManagerFactory(sniKeyManager)).sslProvider(sslProvider);
         if (!ciphers.isEmpty()) {
-            engine.setEnabledCipherSuites(ciphers.toArray(EMPTY_STRING_ARRAY));
+            builder.ciphers(ciphers);
         }
         if (!protocols.isEmpty()) {
-            engine.setEnabledProtocols(protocols.toArray(EMPTY_STRING_ARRAY));
+            builder.protocols(protocols);
+        }
+        if (sessionCacheSize > 0) {
+            builder.sessionCacheSize(sessionCacheSize);
+        }
+        if (sessionTimeout != null && !sessionTimeout.isZero()) {
+            builder.sessionTimeout(sessionTimeout.toSeconds());
+        }
+
+        SslContext sslContext = builder.build();
+        installTicketKeys(sslContext);
+        LOG.INFO("Using %s as SSL provider...", sslProvider);
+
+        return sslContext;
+    }
+
+    private SslProvider determineProvider() {
+        if (!SslProvider.OPENSSL.name().equalsIgnoreCase(provider)) {
+            return SslProvider.JDK;
+        }
+        if (!OpenSsl.isAvailable()) {
+            LOG.WARN("OpenSSL was requested as SSL provider, but it isn't available (%s). Using the JDK instead...",
+                     OpenSsl.unavailabilityCause() == null ? "-" : OpenSsl.unavailabilityCause().getMessage());
+            return SslProvider.JDK;
+        }
+
+        return SslProvider.OPENSSL;
+    }
+
+    private void installTicketKeys(SslContext sslContext) {
+        if (ticketKeys.isEmpty()) {
+            return;
+        }
+        if (!(sslContext.sessionContext() instanceof OpenSslSessionContext openSslSessionContext)) {
+            LOG.WARN("Session ticket keys are only supported by the OpenSSL provider and will be ignored.");
+            return;
         }
-        ch.pipeline().addFirst(new SslHandler(engine));
-        super.initChannel(ch);
+
+        openSslSessionContext.setTicketKeys(ticketKeys.stream()
+                                                      .map(this::parseTicketKey)
+                                                      .toArray(OpenSslSessionTicketKey[]::new));
+    }
+
+    /**
+     * Parses a ticket key which is given as 96 hex digits (16 bytes each for the name, the HMAC key and the AES key).
+     */
+    private OpenSslSessionTicketKey parseTicketKey(String hexKey) {
+        byte[] key = HexFormat.of().parseHex(hexKey.trim());
+        if (key.length != 3 * TICKET_KEY_PART_LENGTH) {
+            throw new IllegalArgumentException(Strings.apply("A session ticket key must consist of %s bytes (%s hex "
+                                                             + "digits) but %s bytes were given.",
+                                                             3 * TICKET_KEY_PART_LENGTH,
+                                                             6 * TICKET_KEY_PART_LENGTH,
+                                                             key.length));
+        }
+
+        return new OpenSslSessionTicketKey(Arrays.copyOfRange(key, 0, TICKET_KEY_PART_LENGTH),
+                                           Arrays.copyOfRange(key, TICKET_KEY_PART_LENGTH, 2 * TICKET_KEY_PART_LENGTH),
+                                           Arrays.copyOfRange(key, 2 * TICKET_KEY_PART_LENGTH, key.length));
+    }
+
+    @Override
+    protected boolean isSSL() {
+        return true;
+    }
+
+    @Override
+    protected void setupPipeline(SocketChannel ch) {
+        ch.pipeline().addFirst(context.newHandler(ch.alloc()));
+        super.setupPipeline(ch);
     }
 }
@@ -21,29 +21,31 @@ import io.netty.handler.ssl.SslHandler;
 import io.netty.handler.stream.ChunkedFile;
 import io.netty.handler.stream.ChunkedWriteHandler;
 import sirius.kernel.commons.Strings;
-import sirius.kernel.commons.Tuple;
 import sirius.kernel.health.Exceptions;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 /**
  * Sends a file as static content.
+ * <p>
+ * This supports range requests. If a single range is requested, it is sent as partial content, several ranges
+ * are sent as <tt>multipart/byteranges</tt> response. Note that on non-TLS connections, each range is sent using
+ * zero-copy.
  */
 class SendFile {
 
-    private static final Pattern RANGE_HEADER = Pattern.compile("bytes=(\\d+)?-(\\d+)?");
-
     private final Response response;
     private File file;
     private RandomAccessFile raf;
     private String contentType;
     private long contentStart;
     private long expectedContentLength;
-    private Tuple<Long, Long> range;
+    private List<ByteRange> ranges;
+    private String boundary;
 
     SendFile(Response response) {
         this.response = response;
@@ -58,7 +60,7 @@ class SendFile {
             }
             determineContentType();
 
-            if (response.handleIfModifiedSince(file.lastModified())) {
+            if (response.handleIfNoneMatch(determineETag(), file.lastModified())) {
                 return;
             }
 
@@ -68,6 +70,7 @@ class SendFile {
                                             response.isPrivate);
 
             if (!parseRangesAndUpdateHeaders()) {
+                raf.close();
                 response.error(HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE, "Cannot parse 'accept-ranges'.");
                 return;
             }
@@ -81,25 +84,46 @@ class SendFile {
         }
     }
 
+    /*
+     * Uses the entity tag provided by the caller (e.g. a content hash of an extracted classpath resource) or derives
+     * one from the file itself.
+     */
+    private String determineETag() {
+        String etag = response.headers().get(HttpHeaderNames.ETAG);
+        if (Strings.isFilled(etag)) {
+            return etag;
+        }
+
+        return Response.computeETag(file);
+    }
+
     private boolean parseRangesAndUpdateHeaders() throws IOException {
         try {
             response.addHeaderIfNotExists(HttpHeaderNames.ACCEPT_RANGES, HttpHeaderValues.BYTES);
+            long availableLength = raf.length();
             contentStart = 0;
-            expectedContentLength = raf.length();
-            range = parseRange(raf.length());
-            if (range == null) {
+            expectedContentLength = availableLength;
+            ranges = ByteRange.parse(response.wc.getHeader(HttpHeaderNames.RANGE), availableLength, Response.maxRanges);
+            if (ranges.isEmpty()) {
                 response.addHeaderIfNotExists(HttpHeaderNames.CONTENT_LENGTH, expectedContentLength);
+            } else if (ranges.size() == 1) {
+                ByteRange range = ranges.get(0);
+                contentStart = range.start();
+                expectedContentLength = range.length();
+                response.setHeader(HttpHeaderNames.CONTENT_LENGTH, expectedContentLength);
+                response.setHeader(HttpHeaderNames.CONTENT_RANGE, range.toContentRange(availableLength));
             } else {
-                contentStart = range.getFirst();
-                expectedContentLength = range.getSecond() - range.getFirst() + 1;
+                boundary = ByteRange.createBoundary();
+                expectedContentLength =
+                        ByteRange.computeMultipartLength(ranges, boundary, contentType, availableLength);
                 response.setHeader(HttpHeaderNames.CONTENT_LENGTH, expectedContentLength);
-                response.setHeader(HttpHeaderNames.CONTENT_RANGE,
-                                   "bytes " + range.getFirst() + "-" + range.getSecond() + "/" + raf.length());
+                response.setHeader(HttpHeaderNames.CONTENT_TYPE, ByteRange.MULTIPART_BYTERANGES + boundary);
             }
 
             return true;
         } catch (IllegalArgumentException e) {
             Exceptions.ignore(e);
+            response.setHeader(HttpHeaderNames.CONTENT_RANGE, "bytes */" + raf.length());
             return false;
         }
     }
@@ -117,9 +141,11 @@ class SendFile {
     }
 
     private boolean sendFileResponse() throws IOException {
-        HttpResponseStatus responseStatus = range != null ? HttpResponseStatus.PARTIAL_CONTENT : HttpResponseStatus.OK;
+        HttpResponseStatus responseStatus =
+                ranges.isEmpty() ? HttpResponseStatus.OK : HttpResponseStatus.PARTIAL_CONTENT;
         HttpResponse res;
-        if (response.canBeCompressed(contentType)
+        if (ranges.size() <= 1
+            && response.canBeCompressed(contentType)
             && expectedContentLength > SmartHttpContentCompressor.MIN_COMPRESSABLE_CONTENT_LENGTH) {
             res = response.createChunkedResponse(responseStatus, true);
         } else {
@@ -127,7 +153,7 @@ class SendFile {
         }
         response.commit(res, false);
         response.installChunkedWriteHandler();
-        ChannelFuture writeFuture = executeChunkedWrite();
+        ChannelFuture writeFuture = ranges.size() > 1 ? executeMultipartWrite() : executeChunkedWrite();
         writeFuture.addListener(ignored -> raf.close());
         response.removedChunkedWriteHandler(writeFuture);
 
@@ -153,37 +179,26 @@ class SendFile {
         }
     }
 
-    private Tuple<Long, Long> parseRange(long availableLength) {
-        String header = response.wc.getHeader(HttpHeaderNames.RANGE);
-        if (Strings.isEmpty(header)) {
-            return null;
-        }
-        Matcher m = RANGE_HEADER.matcher(header);
-        if (!m.matches()) {
-            throw new IllegalArgumentException(Strings.apply("Range does not match the expected format: %s", header));
-        }
-        Tuple<Long, Long> result = Tuple.create();
-        if (Strings.isFilled(m.group(1))) {
-            result.setFirst(Long.parseLong(m.group(1)));
-        } else {
-            result.setFirst(availableLength - Long.parseLong(m.group(2)));
-            result.setSecond(availableLength - 1);
-            return result;
-        }
-        result.setFirst(Long.parseLong(m.group(1)));
-        if (Strings.isFilled(m.group(2))) {
-            result.setSecond(Long.parseLong(m.group(2)));
-        } else {
-            result.setSecond(availableLength - 1);
-        }
-        if (result.getSecond() < result.getFirst()) {
-            return null;
-        }
-        if (result.getSecond() >= availableLength) {
-            throw new IllegalArgumentException(Strings.apply("End of range is beyond the end of available data: %s",
-                                                             header));
+    private ChannelFuture executeMultipartWrite() throws IOException {
+        long availableLength = raf.length();
+        boolean ssl = isSSL();
+        for (ByteRange range : ranges) {
+            response.ctx.write(Unpooled.copiedBuffer(range.toPartHeader(boundary, contentType, availableLength),
+                                                     StandardCharsets.UTF_8));
+            if (ssl) {
+                // Each chunked file closes its underlying file once it is completed, therefore each range needs its
+                // own instance...
+                response.ctx.write(new ChunkedFile(new RandomAccessFile(file, "r"),
+                                                   range.start(),
+                                                   range.length(),
+                                                   Response.BUFFER_SIZE));
+            } else {
+                // Each region opens (and closes) the file on its own, so that the regions don't interfere...
+                response.ctx.write(new DefaultFileRegion(file, range.start(), range.length()));
+            }
         }
 
-        return result;
+        response.ctx.write(Unpooled.copiedBuffer(ByteRange.toTrailer(boundary), StandardCharsets.UTF_8));
+        return response.ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
     }
 }
@@ -8,6 +8,7 @@
 
 package sirius.web.http;
 
+import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpContentCompressor;
 import io.netty.handler.codec.http.HttpHeaderNames;
@@ -15,12 +16,16 @@ import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpResponse;
 import sirius.kernel.commons.Explain;
 import sirius.kernel.commons.Value;
+import sirius.kernel.di.std.ConfigValue;
 
 /**
  * Better version of {@link HttpContentCompressor} which can be disabled by setting Content-Encoding: Identity for a
  * response.
  * <p>
  * Also it disables itself if the given content is not compressable (jpg, png) or too small (less than 4 kB).
+ * <p>
+ * The encoding is negotiated via {@link ContentEncoding}, so that next to <tt>gzip</tt> and <tt>deflate</tt>, also
+ * <tt>br</tt> and <tt>zstd</tt> are supported (if available).
  */
 @SuppressWarnings("squid:MaximumInheritanceDepth")
 @Explain("We inherit the hierarchy from netty and cannot change it.")
@@ -33,6 +38,9 @@ class SmartHttpContentCompressor extends HttpContentCompressor {
      */
     public static final int MIN_COMPRESSABLE_CONTENT_LENGTH = 1024;
 
+    @ConfigValue("http.compression.level")
+    private static int compressionLevel;
+
     @Override
     protected Result beginEncode(HttpResponse res, String acceptEncoding) throws Exception {
         if (!(res instanceof FullHttpResponse) && !res.headers()
@@ -55,7 +63,19 @@ class SmartHttpContentCompressor extends HttpContentCompressor {
             return null;
         }
 
-        return super.beginEncode(res, acceptEncoding);
+        ContentEncoding encoding = ContentEncoding.negotiate(acceptEncoding);
+        if (encoding == null) {
+            removeContentLengthForChunkedTransfers(res);
+            return null;
+        }
+
+        // The entity tag of the uncompressed content must not be reused for the compressed representation...
+        String etag = res.headers().get(HttpHeaderNames.ETAG);
+        if (etag != null) {
+            res.headers().set(HttpHeaderNames.ETAG, Response.appendContentCoding(etag, encoding.getName()));
+        }
+
+        return new Result(encoding.getName(), new EmbeddedChannel(encoding.createEncoder(compressionLevel)));
     }
 
     /**
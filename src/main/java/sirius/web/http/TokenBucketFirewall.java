@@ -0,0 +1,159 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.web.http;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import sirius.kernel.Sirius;
+import sirius.kernel.di.std.ConfigValue;
+import sirius.kernel.di.std.Register;
+import sirius.kernel.health.metrics.MetricProvider;
+import sirius.kernel.health.metrics.MetricsCollector;
+import sirius.kernel.settings.Extension;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Provides a built-in {@link Firewall} which rate-limits requests per IP and {@link Limited realm}.
+ * <p>
+ * Each realm is configured in <tt>http.firewall.realms</tt> by specifying the number of requests (<tt>limit</tt>)
+ * permitted per <tt>interval</tt> and IP. This is enforced by a token bucket per IP and realm, which holds up to
+ * <tt>limit</tt> tokens and is refilled continuously. Therefore, a client may send a burst of requests, but has to
+ * slow down to the configured rate afterwards. Requests exceeding the limit are answered with a 429 along with a
+ * <tt>Retry-After</tt> header.
+ * <p>
+ * All buckets are kept in a fixed size, lock-free table (see {@link TokenBuckets}), so that neither a flood of
+ * unique IPs nor a high request rate creates any garbage or contention.
+ * <p>
+ * Additionally, all IPs listed in <tt>http.firewall.blockedIPs</tt> (see {@link WebServer#getBlockedIPs()}) are
+ * reported as blacklisted, so that these requests show up in the metrics of the firewall.
+ * <p>
+ * This firewall is enabled via the framework <tt>web.firewall</tt>.
+ */
+@Register(framework = TokenBucketFirewall.FRAMEWORK_FIREWALL, classes = {Firewall.class, MetricProvider.class})
+public class TokenBucketFirewall implements Firewall, MetricProvider {
+
+    /**
+     * Contains the name of the framework which enables this firewall.
+     */
+    public static final String FRAMEWORK_FIREWALL = "web.firewall";
+
+    private static final String CONFIG_REALMS = "http.firewall.realms";
+    private static final long MIX_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    @ConfigValue("http.firewall.trackedBuckets")
+    private int trackedBuckets;
+
+    private volatile TokenBuckets buckets;
+    private final Map<String, RealmLimit> realms = new ConcurrentHashMap<>();
+    private final AtomicLong blockedRequests = new AtomicLong();
+    private final AtomicLong rateLimitedRequests = new AtomicLong();
+
+    /**
+     * Contains the parsed settings of a realm.
+     *
+     * @param capacity         the number of requests which can be sent in a burst
+     * @param emissionInterval the number of milliseconds after which another request is permitted
+     */
+    private record RealmLimit(int capacity, long emissionInterval) {
+
+        private boolean isUnlimited() {
+            return capacity <= 0;
+        }
+    }
+
+    @Override
+    public boolean isIPBlacklisted(WebContext ctx) {
+        IPRange.RangeSet blocked = WebServer.getBlockedIPs();
+        if (!blocked.isEmpty() && blocked.accepts(ctx.getRemoteIP())) {
+            blockedRequests.incrementAndGet();
+            return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean handleRateLimiting(WebContext ctx, String realm) {
+        RealmLimit limit = realms.computeIfAbsent(realm, this::loadRealm);
+        if (limit.isUnlimited()) {
+            return false;
+        }
+
+        long waitTime = getBuckets().tryAcquire(computeKeyHash(ctx.getRemoteIP(), realm),
+                                                System.currentTimeMillis(),
+                                                limit.emissionInterval(),
+                                                limit.capacity());
+        if (waitTime <= 0) {
+            return false;
+        }
+
+        rateLimitedRequests.incrementAndGet();
+        ctx.respondWith()
+           .addHeader(HttpHeaderNames.RETRY_AFTER, Math.max(1, TimeUnit.MILLISECONDS.toSeconds(waitTime + 999)))
+           .error(HttpResponseStatus.TOO_MANY_REQUESTS, "Too many requests - Please try again later.");
+        return true;
+    }
+
+    private RealmLimit loadRealm(String realm) {
+        Extension extension = Sirius.getSettings().getExtension(CONFIG_REALMS, realm);
+        int limit = extension.getInt("limit");
+        if (limit <= 0) {
+            return new RealmLimit(0, 0);
+        }
+
+        // As buckets are tracked with a precision of one millisecond, we cannot permit more than one request per ms...
+        long emissionInterval = Math.max(1, extension.getMilliseconds("interval") / limit);
+        return new RealmLimit(limit, emissionInterval);
+    }
+
+    private TokenBuckets getBuckets() {
+        TokenBuckets result = buckets;
+        if (result == null) {
+            synchronized (this) {
+                if (buckets == null) {
+                    buckets = new TokenBuckets(trackedBuckets);
+                }
+                result = buckets;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Computes a well distributed 64-bit hash for the given IP and realm, so that no key object has to be created.
+     */
+    private long computeKeyHash(InetAddress address, String realm) {
+        long hash = realm.hashCode();
+        for (byte part : address.getAddress()) {
+            hash = (hash ^ (part & 0xFF)) * MIX_MULTIPLIER;
+        }
+
+        return hash ^ (hash >>> 31);
+    }
+
+    @Override
+    public void gather(MetricsCollector collector) {
+        collector.differentialMetric("http_firewall_blocked",
+                                     "http-firewall-blocked",
+                                     "HTTP Firewall Blocked Requests",
+                                     blockedRequests.get(),
+                                     "/min");
+        collector.differentialMetric("http_firewall_rate_limited",
+                                     "http-firewall-rate-limited",
+                                     "HTTP Firewall Rate Limited Requests",
+                                     rateLimitedRequests.get(),
+                                     "/min");
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.web.http;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps a fixed number of token buckets in a lock-free table.
+ * <p>
+ * Each bucket is represented by a single <tt>long</tt> which contains a fingerprint of its key (24 bits) along with
+ * the "theoretical arrival time" of the next request (40 bits, in milliseconds since the table was created). This is
+ * the generic cell rate algorithm, which behaves exactly like a token bucket which is refilled continuously, but
+ * doesn't need to store the number of tokens explicitly.
+ * <p>
+ * A key is mapped to a group of {@link #WAYS} slots. If none of them belongs to the key, the slot of the least
+ * recently used bucket is taken over. As a full bucket doesn't carry any state, this only affects keys which have
+ * been active recently. Therefore, the memory used is fixed and a flood of unique keys neither allocates objects
+ * nor grows the table - it only pushes out other buckets, which then start again as full buckets.
+ */
+class TokenBuckets {
+
+    /**
+     * Contains the number of slots which are probed for a key.
+     */
+    static final int WAYS = 4;
+
+    private static final int TIME_BITS = 40;
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+    private static final int MAX_ATTEMPTS = 8;
+
+    private final AtomicLongArray slots;
+    private final int groupMask;
+    private final long epoch;
+
+    /**
+     * Creates a new table.
+     *
+     * @param capacity the number of buckets to keep. This is rounded up to the next power of two.
+     */
+    TokenBuckets(int capacity) {
+        int size = Integer.highestOneBit((Math.max(WAYS, capacity) - 1) << 1);
+        this.slots = new AtomicLongArray(size);
+        this.groupMask = (size - 1) & ~(WAYS - 1);
+        this.epoch = System.currentTimeMillis();
+    }
+
+    /**
+     * Tries to take a token from the bucket of the given key.
+     *
+     * @param keyHash          the 64-bit hash of the key
+     * @param now              the current timestamp as provided by {@link System#currentTimeMillis()}
+     * @param emissionInterval the time (in milliseconds) it takes to refill a single token
+     * @param capacity         the number of tokens a full bucket contains
+     * @return <tt>0</tt> if a token was taken, or the number of milliseconds to wait until a token is available
+     */
+    long tryAcquire(long keyHash, long now, long emissionInterval, int capacity) {
+        long fingerprint = fingerprint(keyHash);
+        int group = (int) keyHash & groupMask;
+        long relativeNow = (now - epoch) & TIME_MASK;
+        long tolerance = emissionInterval * (capacity - 1);
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            int index = findSlot(group, fingerprint);
+            long slot = slots.get(index);
+            long arrivalTime = slot >>> TIME_BITS == fingerprint ? slot & TIME_MASK : relativeNow;
+            long waitTime = arrivalTime - tolerance - relativeNow;
+            if (waitTime > 0) {
+                return waitTime;
+            }
+
+            long nextArrivalTime = Math.max(arrivalTime, relativeNow) + emissionInterval;
+            if (slots.compareAndSet(index, slot, (fingerprint << TIME_BITS) | (nextArrivalTime & TIME_MASK))) {
+                return 0;
+            }
+        }
+
+        // Under heavy contention on a single group, we rather let a request pass than spinning any longer...
+        return 0;
+    }
+
+    /**
+     * Determines the slot which either belongs to the given key or which has been used least recently.
+     */
+    private int findSlot(int group, long fingerprint) {
+        int victim = group;
+        long victimTime = Long.MAX_VALUE;
+        for (int index = group; index < group + WAYS; index++) {
+            long slot = slots.get(index);
+            if (slot >>> TIME_BITS == fingerprint) {
+                return index;
+            }
+            long arrivalTime = slot & TIME_MASK;
+            if (arrivalTime < victimTime) {
+                victim = index;
+                victimTime = arrivalTime;
+            }
+        }
+
+        return victim;
+    }
+
+    /**
+     * Computes the fingerprint stored along with the bucket. This uses the upper bits of the hash, as the lower ones
+     * already determine the group. A fingerprint is never 0, so that empty slots never match.
+     */
+    private long fingerprint(long keyHash) {
+        long fingerprint = keyHash >>> TIME_BITS;
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    /**
+     * Returns the number of buckets in this table.
+     *
+     * @return the number of buckets
+     */
+    int capacity() {
+        return slots.length();
+    }
+}
@@ -9,7 +9,9 @@ package sirius.web.http;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.JSONReader;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpMethod;
@@ -55,6 +57,10 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -86,6 +92,7 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 /**
@@ -103,6 +110,7 @@ public class WebContext implements SubContext {
     private static final String SESSION_PIN_KEY = "_pin";
     private static final Log SESSION_CHECK = Log.get("session-check");
     private static final long SESSION_PIN_COOKIE_TTL = TimeUnit.DAYS.toSeconds(10L * 365);
+    private static final XMLInputFactory STAX_FACTORY = createStaxFactory();
 
     /**
      * How the secure property of a cookie should be set
@@ -278,6 +286,12 @@ public class WebContext implements SubContext {
      */
     protected volatile long scheduled = 0;
 
+    /**
+     * Determines if this request has been admitted by the {@link ConcurrencyLimiter} and is therefore still counted
+     * as being in flight.
+     */
+    protected final AtomicBoolean admittedByLimiter = new AtomicBoolean();
+
     /**
      * Contains the timestamp this request was commited (a response was created).
      * This can be used to actually measure the server performance and not the download speed of clients.
@@ -398,6 +412,9 @@ public class WebContext implements SubContext {
     @Part
     private static CSRFHelper csrfHelper;
 
+    @Part
+    private static ConcurrencyLimiter limiter;
+
     /**
      * Provides access to the underlying ChannelHandlerContext
      *
@@ -1835,7 +1852,7 @@ public class WebContext implements SubContext {
      * Returns the body of the HTTP request as XML data.
      * <p>
      * Note that all data is loaded into the heap. Therefore certain limits apply. If the data is too large, an
-     * exception will be thrown.
+     * exception will be thrown. Use {@link #getXMLContentReader()} to process large payloads.
      *
      * @param namespaceAware if true the XML will be parsed namespace aware.
      *                       See {@link DocumentBuilderFactory#setNamespaceAware(boolean)} for details.
@@ -1883,7 +1900,7 @@ public class WebContext implements SubContext {
      * Returns the body of the HTTP request as JSON data.
      * <p>
      * Note that all data is loaded into the heap. Therefore certain limits apply. If the data is too large, an
-     * exception will be thrown.
+     * exception will be thrown. Use {@link #getJSONContentReader()} to process large payloads.
      *
      * @return the body of the HTTP request as JSON input
      */
@@ -1917,6 +1934,141 @@ public class WebContext implements SubContext {
         }
     }
 
+    /**
+     * Provides a streaming reader for the JSON body of the request.
+     * <p>
+     * In contrast to {@link #getJSONContent()}, the body is never loaded into the heap as a whole. Therefore, large
+     * payloads can be processed object by object using constant memory, e.g.:
+     * <pre>{@code
+     * try (JSONReader reader = webContext.getJSONContentReader()) {
+     *     reader.startArray();
+     *     while (reader.hasNext()) {
+     *         processRecord(reader.readObject(JSONObject.class));
+     *     }
+     *     reader.endArray();
+     * }
+     * }</pre>
+     * Note that the body is read directly from the buffered content or from the {@link InputStreamHandler} of a
+     * pre-dispatched request. The reader must be closed by the caller.
+     *
+     * @return a pull reader which parses the body of the request
+     */
+    public JSONReader getJSONContentReader() {
+        try {
+            return new JSONReader(new InputStreamReader(openContentStream(
+                    "Expected a valid JSON body for this request."), getRequestEncoding()));
+        } catch (HandledException e) {
+            throw e;
+        } catch (Exception e) {
+            throw Exceptions.handle()
+                            .to(WebServer.LOG)
+                            .error(e)
+                            .withSystemErrorMessage("Cannot read the JSON body of this request: %s (%s).")
+                            .handle();
+        }
+    }
+
+    /**
+     * Provides a StAX reader for the XML body of the request.
+     * <p>
+     * In contrast to {@link #getXMLContent()}, no DOM is built for the body. Therefore, large payloads can be processed
+     * element by element using constant memory. Note that the body is read directly from the buffered content or from
+     * the {@link InputStreamHandler} of a pre-dispatched request. DTDs and external entities are not supported.
+     * <p>
+     * The reader must be closed by the caller, which also closes the underlying stream.
+     *
+     * @return a StAX reader which parses the body of the request
+     */
+    public XMLStreamReader getXMLContentReader() {
+        try {
+            InputStream inputStream = openContentStream("Expected valid XML as body of this request.");
+            XMLStreamReader reader = STAX_FACTORY.createXMLStreamReader(inputStream, getRequestEncoding().name());
+            return new StreamReaderDelegate(reader) {
+                @Override
+                public void close() throws XMLStreamException {
+                    try {
+                        super.close();
+                    } finally {
+                        closeContentStream(inputStream);
+                    }
+                }
+            };
+        } catch (HandledException e) {
+            throw e;
+        } catch (Exception e) {
+            throw Exceptions.handle()
+                            .to(WebServer.LOG)
+                            .error(e)
+                            .withSystemErrorMessage("Cannot read the XML body of this request: %s (%s).")
+                            .handle();
+        }
+    }
+
+    /**
+     * Provides a streaming parser for a multipart body (e.g. a file upload).
+     * <p>
+     * This is intended for pre-dispatched routes, as the parts are read from the {@link InputStreamHandler} while they
+     * arrive, without being buffered in memory or in a temporary file.
+     *
+     * @return a parser which provides one part after another
+     * @see MultipartStream
+     */
+    public MultipartStream getMultipartContent() {
+        String boundary = MultipartStream.parseBoundary(getHeader(HttpHeaderNames.CONTENT_TYPE));
+        if (Strings.isEmpty(boundary)) {
+            throw Exceptions.createHandled()
+                            .withSystemErrorMessage("Expected a multipart body for this request.")
+                            .handle();
+        }
+
+        try {
+            return new MultipartStream(openContentStream("Expected a multipart body for this request."), boundary);
+        } catch (HandledException e) {
+            throw e;
+        } catch (Exception e) {
+            throw Exceptions.handle()
+                            .to(WebServer.LOG)
+                            .error(e)
+                            .withSystemErrorMessage("Cannot read the multipart body of this request: %s (%s).")
+                            .handle();
+        }
+    }
+
+    private static void closeContentStream(InputStream inputStream) {
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            Exceptions.ignore(e);
+        }
+    }
+
+    private static XMLInputFactory createStaxFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Opens the body of the request as stream without copying it.
+     * <p>
+     * For pre-dispatched requests, this is the {@link InputStreamHandler} which receives the data as it arrives.
+     * Otherwise, the data is either read from the file on disk or directly from the buffer in memory.
+     */
+    private InputStream openContentStream(String missingContentMessage) throws IOException {
+        if (contentHandler instanceof InputStreamHandler inputStreamHandler) {
+            return inputStreamHandler;
+        }
+        if (content == null) {
+            throw Exceptions.handle().to(WebServer.LOG).withSystemErrorMessage(missingContentMessage).handle();
+        }
+        if (!content.isInMemory()) {
+            return new FileInputStream(content.getFile());
+        }
+
+        return new ByteBufInputStream(content.getByteBuf().duplicate());
+    }
+
     /**
      * Tries to determine the charset used for the INCOMING request.
      * <p>
@@ -1999,6 +2151,7 @@ public class WebContext implements SubContext {
             completionPromise.fail(new IllegalStateException("Request has been aborted"));
         }
 
+        limiter.release(this);
         releaseContentHandler();
         releasePostDecoder();
         releaseContent();
@@ -140,8 +140,20 @@ public class WebServer implements Startable, Stoppable, Killable, MetricProvider
     @ConfigValue("http.firewall.filterIPs")
     private static String ipFilter;
     private static IPRange.RangeSet filterRanges;
+
+    /**
+     * Contains a list of IP ranges which are blocked. Just like {@link #ipFilter}, this is checked as soon as a
+     * connection is accepted. Additionally, the effective remote IP of a request (which might be given via
+     * X-Forwarded-For) is checked against this list.
+     *
+     * @see IPRange#parseRangeSet(String)
+     */
+    @ConfigValue("http.firewall.blockedIPs")
+    private static String blockedIPs;
+    private static IPRange.RangeSet blockedRanges;
     private Channel channel;
     private Channel sslChannel;
+    private static volatile SSLWebServerInitializer sslInitializer;
 
     @ConfigValue("http.ssl.enabled")
     private boolean ssl;
@@ -227,6 +239,46 @@ public class WebServer implements Startable, Stoppable, Killable, MetricProvider
         return filterRanges;
     }
 
+    /**
+     * Returns all blocked IPs as {@link IPRange.RangeSet}
+     *
+     * @return a range set describing all blocked ranges. Note that this is empty (and therefore accepts all IPs) if
+     * no IPs are blocked.
+     */
+    protected static IPRange.RangeSet getBlockedIPs() {
+        if (blockedRanges == null) {
+            try {
+                blockedRanges = IPRange.parseRangeSet(blockedIPs);
+            } catch (Exception e) {
+                Exceptions.handle()
+                          .to(LOG)
+                          .error(e)
+                          .withSystemErrorMessage("Error parsing config value: 'http.firewall.blockedIPs': %s (%s)")
+                          .handle();
+                blockedRanges = IPRange.NO_FILTER;
+            }
+        }
+
+        return blockedRanges;
+    }
+
+    /**
+     * Determines if a connection from the given address is permitted by <tt>http.firewall.filterIPs</tt> and
+     * <tt>http.firewall.blockedIPs</tt>.
+     *
+     * @param address the remote address of the connection
+     * @return <tt>true</tt> if the connection is permitted, <tt>false</tt> if it has to be closed
+     */
+    protected static boolean isConnectionPermitted(InetAddress address) {
+        IPRange.RangeSet blocked = getBlockedIPs();
+        if (!blocked.isEmpty() && blocked.accepts(address)) {
+            return false;
+        }
+
+        IPRange.RangeSet filter = getIPFilter();
+        return filter.isEmpty() || filter.accepts(address);
+    }
+
     /**
      * Returns all proxy IPs as {@link IPRange.RangeSet}
      *
@@ -553,7 +605,8 @@ public class WebServer implements Startable, Stoppable, Killable, MetricProvider
 
     private void createHTTPSChannel() {
         try {
-            ServerBootstrap bootstrap = createServerBootstrap(new SSLWebServerInitializer());
+            sslInitializer = new SSLWebServerInitializer();
+            ServerBootstrap bootstrap = createServerBootstrap(sslInitializer);
             // Bind and start to accept incoming connections.
             if (Strings.isFilled(bindAddress)) {
                 sslChannel = bootstrap.bind(new InetSocketAddress(bindAddress, sslPort)).sync().channel();
@@ -843,6 +896,20 @@ public class WebServer implements Startable, Stoppable, Killable, MetricProvider
         }
     }
 
+    /**
+     * Reloads the keystore used by the HTTPS server once it has changed.
+     */
+    @Register
+    public static class KeystoreReloader implements EveryTenSeconds {
+
+        @Override
+        public void runTimer() throws Exception {
+            if (sslInitializer != null) {
+                sslInitializer.reloadIfModified();
+            }
+        }
+    }
+
     /*
      * Used to notify the web server about an open connection
      */
@@ -480,7 +480,7 @@ class WebServerHandler extends ChannelDuplexHandler implements ActiveHTTPConnect
     }
 
     /**
-     * Although the {@link LowLevelHandler} already checked the effective TCP remote IP,
+     * Although the {@link WebServerInitializer} already checked the effective TCP remote IP,
      * we now check again, as the parsed request might contain a X-Forwarded-For header,
      * which contains the effective remote IP to verify.
      *
@@ -503,11 +503,14 @@ class WebServerHandler extends ChannelDuplexHandler implements ActiveHTTPConnect
     }
 
     private boolean isBlocked(WebContext ctx) {
-        if (!WebServer.getIPFilter().isEmpty() && WebServer.getIPFilter().accepts(ctx.getRemoteIP())) {
+        // The firewall is asked first, so that it can account for blocked requests. As custom firewalls might not
+        // respect http.firewall.blockedIPs, it is checked here nevertheless...
+        if (firewall != null && firewall.isIPBlacklisted(ctx)) {
             return true;
         }
 
-        return firewall != null && firewall.isIPBlacklisted(ctx);
+        IPRange.RangeSet blocked = WebServer.getBlockedIPs();
+        return !blocked.isEmpty() && blocked.accepts(ctx.getRemoteIP());
     }
 
     /*
@@ -17,6 +17,7 @@ import sirius.kernel.di.std.ConfigValue;
 import sirius.kernel.di.std.Part;
 
 import javax.annotation.Nullable;
+import java.net.InetSocketAddress;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.concurrent.TimeUnit;
@@ -38,6 +39,29 @@ class WebServerInitializer extends ChannelInitializer<SocketChannel> {
 
     @Override
     public void initChannel(SocketChannel ch) throws Exception {
+        if (WebServer.connections.incrementAndGet() < 0) {
+            WebServer.connections.set(0);
+        }
+
+        // Filter connections before any handler (and therefore any codec or buffer) is created for them...
+        InetSocketAddress remoteAddress = ch.remoteAddress();
+        if (remoteAddress == null || !WebServer.isConnectionPermitted(remoteAddress.getAddress())) {
+            if (WebServer.blocks.incrementAndGet() < 0) {
+                WebServer.blocks.set(0);
+            }
+            ch.close();
+            return;
+        }
+
+        setupPipeline(ch);
+    }
+
+    /**
+     * Creates all handlers for a permitted connection.
+     *
+     * @param ch the channel to setup
+     */
+    protected void setupPipeline(SocketChannel ch) {
         ChannelPipeline pipeline = ch.pipeline();
 
         pipeline.addFirst("lowlevel", LowLevelHandler.INSTANCE);
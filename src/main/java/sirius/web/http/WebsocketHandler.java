@@ -15,14 +15,23 @@ import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilter;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilterProvider;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandler;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
 import sirius.kernel.async.CallContext;
 import sirius.kernel.async.Tasks;
+import sirius.kernel.di.std.ConfigValue;
 import sirius.kernel.di.std.Part;
 import sirius.kernel.health.Exceptions;
 import sirius.kernel.nls.NLS;
 
 import javax.net.ssl.SSLHandshakeException;
 import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Inserted into the pipeline by the {@link WebServerInitializer} if an implementation of {@link WebsocketDispatcher}
@@ -37,8 +46,51 @@ public class WebsocketHandler extends ChannelDuplexHandler {
     @Part
     private static Tasks tasks;
 
+    @Part
+    private static WebsocketHub hub;
+
+    @ConfigValue("http.websockets.maxFrameSize")
+    private static long maxFrameSize;
+
+    @ConfigValue("http.websockets.maxQueuedFrames")
+    private static int maxQueuedFrames;
+
+    @ConfigValue("http.websockets.compression.enabled")
+    private static boolean compressionEnabled;
+
+    @ConfigValue("http.websockets.compression.level")
+    private static int compressionLevel;
+
+    @ConfigValue("http.websockets.compression.minSize")
+    private static long compressionMinSize;
+
+    @ConfigValue("http.websockets.compression.clientWindowBits")
+    private static int clientWindowBits;
+
+    @ConfigValue("http.websockets.compression.requestClientNoContextTakeover")
+    private static boolean requestClientNoContextTakeover;
+
     public static final String EXECUTOR_WEBSOCKETS = "websockets";
 
+    /**
+     * Limits the number of frames processed by a single task, so that a chatty client cannot occupy a thread forever.
+     */
+    private static final int MAX_FRAMES_PER_DRAIN = 128;
+
+    /**
+     * Contains the frames to process if the session demands {@link WebsocketSession#isSerialProcessing() serial
+     * processing}.
+     */
+    private final Queue<WebSocketFrame> inboundFrames = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedFrames = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /**
+     * Determines if we stopped reading from the channel, as too many frames are queued. This is only modified by the
+     * event loop of the channel.
+     */
+    private volatile boolean readingSuspended;
+
     /**
      * Creates a new handler (one per connection) talking to the given dispatcher.
      *
@@ -67,8 +119,15 @@ public class WebsocketHandler extends ChannelDuplexHandler {
     public void channelUnregistered(ChannelHandlerContext ctx) throws Exception {
         if (websocketSession != null) {
             websocketSession.onWebsocketClosed();
+            hub.unsubscribeAll(websocketSession);
             WebServer.websockets.decrementAndGet();
         }
+        if (!draining.get()) {
+            WebSocketFrame frame;
+            while ((frame = inboundFrames.poll()) != null) {
+                frame.release();
+            }
+        }
 
         super.channelUnregistered(ctx);
     }
@@ -119,11 +178,115 @@ public class WebsocketHandler extends ChannelDuplexHandler {
     }
 
     private void dispatchFrame(ChannelHandlerContext ctx, WebSocketFrame msg) {
+        if (websocketSession.isSerialProcessing()) {
+            enqueueFrame(ctx, msg);
+            return;
+        }
+
         tasks.executor(EXECUTOR_WEBSOCKETS)
              .dropOnOverload(() -> terminateOnError(ctx, msg))
              .start(() -> handleFrameInOwnThread(msg));
     }
 
+    /*
+     * Queues the given frame for serial processing. Once the high-water mark is reached, we stop reading from the
+     * channel, so that a client sending faster than we process cannot pile up frames on the heap. As frames which have
+     * already been read are still decoded, the queue can grow a bit further - if it reaches twice the limit, the client
+     * is misbehaving and the connection is closed.
+     */
+    private void enqueueFrame(ChannelHandlerContext ctx, WebSocketFrame msg) {
+        int queued = queuedFrames.incrementAndGet();
+        if (queued > 2 * maxQueuedFrames) {
+            queuedFrames.decrementAndGet();
+            WebServer.LOG.FINE("Closing a websocket as %s frames are queued for processing.", queued - 1);
+            terminateOnError(ctx, msg);
+            return;
+        }
+
+        // This has to happen before the frame is queued, so that the drain which takes it also sees the suspension...
+        if (queued >= maxQueuedFrames && !readingSuspended) {
+            readingSuspended = true;
+            ctx.channel().config().setAutoRead(false);
+        }
+
+        inboundFrames.add(msg);
+        scheduleDrain(ctx);
+    }
+
+    /*
+     * Resumes reading from the channel once half of the queued frames have been processed.
+     */
+    private void resumeReadingIfDrained(ChannelHandlerContext ctx) {
+        if (readingSuspended && queuedFrames.get() <= maxQueuedFrames / 2) {
+            ctx.channel().eventLoop().execute(() -> {
+                if (readingSuspended && queuedFrames.get() <= maxQueuedFrames / 2) {
+                    readingSuspended = false;
+                    ctx.channel().config().setAutoRead(true);
+                }
+            });
+        }
+    }
+
+    /*
+     * Ensures that exactly one task drains the inbound frames of this connection.
+     */
+    private void scheduleDrain(ChannelHandlerContext ctx) {
+        if (draining.compareAndSet(false, true)) {
+            tasks.executor(EXECUTOR_WEBSOCKETS)
+                 .dropOnOverload(() -> terminateAndReleaseQueuedFrames(ctx))
+                 .start(() -> drainFrames(ctx));
+        }
+    }
+
+    private void drainFrames(ChannelHandlerContext ctx) {
+        CallContext.setCurrent(currentCall);
+        websocketSession.beginBatch();
+        try {
+            int processedFrames = 0;
+            WebSocketFrame frame;
+            while (processedFrames++ < MAX_FRAMES_PER_DRAIN && (frame = inboundFrames.poll()) != null) {
+                queuedFrames.decrementAndGet();
+                handleQueuedFrame(frame);
+            }
+        } finally {
+            websocketSession.completeBatch();
+            draining.set(false);
+        }
+
+        resumeReadingIfDrained(ctx);
+
+        // Frames might have been received after the last poll - or we stopped as the batch was full.
+        // In this case, we schedule another drain...
+        if (!inboundFrames.isEmpty()) {
+            scheduleDrain(ctx);
+        }
+    }
+
+    private void handleQueuedFrame(WebSocketFrame frame) {
+        try {
+            websocketSession.onFrame(frame);
+        } catch (Exception e) {
+            Exceptions.handle(WebServer.LOG, e);
+        } finally {
+            frame.release();
+        }
+    }
+
+    private void terminateAndReleaseQueuedFrames(ChannelHandlerContext ctx) {
+        draining.set(false);
+        try {
+            ctx.channel().close();
+        } catch (Exception e) {
+            Exceptions.handle(WebServer.LOG, e);
+        } finally {
+            WebSocketFrame frame;
+            while ((frame = inboundFrames.poll()) != null) {
+                queuedFrames.decrementAndGet();
+                frame.release();
+            }
+        }
+    }
+
     private void handleFrameInOwnThread(WebSocketFrame msg) {
         try {
             CallContext.setCurrent(currentCall);
@@ -136,15 +299,54 @@ public class WebsocketHandler extends ChannelDuplexHandler {
     private void setupWebsocketPipeline(ChannelHandlerContext ctx, Object msg) throws Exception {
         HttpObjectAggregator handler = new HttpObjectAggregator(8192);
         ctx.pipeline().addBefore("websockethandler", "aggregator", handler);
+        String lastHandler = "aggregator";
+        if (compressionEnabled) {
+            ctx.pipeline().addAfter(lastHandler, "websocketx-compression", createCompressionHandler());
+            lastHandler = "websocketx-compression";
+        }
         ctx.pipeline()
-           .addAfter("aggregator",
+           .addAfter(lastHandler,
                      "websocketx",
-                     new WebSocketServerProtocolHandler(((HttpRequest) msg).uri(), "xmpp", true));
+                     new WebSocketServerProtocolHandler(((HttpRequest) msg).uri(),
+                                                        "xmpp",
+                                                        true,
+                                                        (int) maxFrameSize));
         ctx.pipeline().remove("idler");
         ctx.pipeline().remove("compressor");
         handler.channelRead(ctx, msg);
     }
 
+    /*
+     * Negotiates the "permessage-deflate" extension. Small messages are sent uncompressed, as the overhead of
+     * compressing them outweighs the gain. As a compression context requires a considerable amount of memory
+     * per connection, we permit clients to disable context takeover and also to reduce our window size.
+     *
+     * Note that the size of inflated messages isn't limited by the decoder, therefore this is disabled by default.
+     */
+    private WebSocketServerExtensionHandler createCompressionHandler() {
+        WebSocketExtensionFilter skipSmallFrames = frame -> frame.content().readableBytes() < compressionMinSize;
+        WebSocketExtensionFilterProvider filterProvider = new WebSocketExtensionFilterProvider() {
+            @Override
+            public WebSocketExtensionFilter encoderFilter() {
+                return skipSmallFrames;
+            }
+
+            @Override
+            public WebSocketExtensionFilter decoderFilter() {
+                return WebSocketExtensionFilter.NEVER_SKIP;
+            }
+        };
+
+        PerMessageDeflateServerExtensionHandshaker handshaker =
+                new PerMessageDeflateServerExtensionHandshaker(compressionLevel,
+                                                               true,
+                                                               clientWindowBits,
+                                                               true,
+                                                               requestClientNoContextTakeover,
+                                                               filterProvider);
+        return new WebSocketServerExtensionHandler(handshaker);
+    }
+
     private boolean isWebsocketRequest(HttpRequest req) {
         if (websocketDispatcher == null || req.uri() == null) {
             return false;
@@ -0,0 +1,150 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.web.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import sirius.kernel.di.std.Register;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Distributes messages to all {@link WebsocketSession websocket sessions} which subscribed to a topic.
+ * <p>
+ * Sending the same message to many sessions via {@link WebsocketSession#sendMessage(String)} encodes the message
+ * once per session. The hub encodes a published message only once into a pooled buffer and hands a
+ * retained duplicate of it to each subscriber. Subscribers whose channel isn't writable (as the client doesn't
+ * keep up reading) are skipped, so that a slow client doesn't pile up messages in memory.
+ * <p>
+ * Sessions are automatically unsubscribed once their websocket is closed.
+ */
+@Register(classes = WebsocketHub.class)
+public class WebsocketHub {
+
+    private final Map<String, Set<WebsocketSession>> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicLong deliveredMessages = new AtomicLong();
+    private final AtomicLong droppedMessages = new AtomicLong();
+
+    /**
+     * Subscribes the given session to the given topic.
+     *
+     * @param topic   the topic to subscribe to
+     * @param session the session which will receive all messages published for the topic
+     */
+    public void subscribe(String topic, WebsocketSession session) {
+        // The session has to be added within the atomic update, as a concurrent unsubscribe might otherwise remove
+        // the (empty) set of subscribers in between, which would silently discard this subscription...
+        subscriptions.compute(topic, (ignored, sessions) -> {
+            Set<WebsocketSession> result = sessions == null ? ConcurrentHashMap.newKeySet() : sessions;
+            result.add(session);
+            return result;
+        });
+    }
+
+    /**
+     * Removes the subscription of the given session for the given topic.
+     *
+     * @param topic   the topic to unsubscribe from
+     * @param session the session to unsubscribe
+     */
+    public void unsubscribe(String topic, WebsocketSession session) {
+        subscriptions.computeIfPresent(topic, (ignored, sessions) -> {
+            sessions.remove(session);
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+
+    /**
+     * Removes all subscriptions of the given session.
+     *
+     * @param session the session to unsubscribe
+     */
+    public void unsubscribeAll(WebsocketSession session) {
+        subscriptions.keySet().forEach(topic -> unsubscribe(topic, session));
+    }
+
+    /**
+     * Returns the number of sessions which subscribed to the given topic.
+     *
+     * @param topic the topic to check
+     * @return the number of subscribers
+     */
+    public int getNumberOfSubscribers(String topic) {
+        Set<WebsocketSession> sessions = subscriptions.get(topic);
+        return sessions == null ? 0 : sessions.size();
+    }
+
+    /**
+     * Sends the given message as text frame to all subscribers of the given topic.
+     *
+     * @param topic   the topic to publish to
+     * @param message the message to send
+     * @return the number of sessions which received the message
+     */
+    public int publish(String topic, String message) {
+        Set<WebsocketSession> sessions = subscriptions.get(topic);
+        if (sessions == null || sessions.isEmpty()) {
+            return 0;
+        }
+
+        ByteBuf content = ByteBufUtil.writeUtf8(ByteBufAllocator.DEFAULT, message);
+        try {
+            int delivered = 0;
+            for (WebsocketSession session : sessions) {
+                if (deliver(session, content)) {
+                    delivered++;
+                }
+            }
+
+            deliveredMessages.addAndGet(delivered);
+            return delivered;
+        } finally {
+            content.release();
+        }
+    }
+
+    private boolean deliver(WebsocketSession session, ByteBuf content) {
+        Channel channel = session.getContext().getCtx().channel();
+        if (!channel.isActive()) {
+            unsubscribeAll(session);
+            return false;
+        }
+        if (!channel.isWritable()) {
+            droppedMessages.incrementAndGet();
+            return false;
+        }
+
+        session.sendFrame(new TextWebSocketFrame(content.retainedDuplicate()));
+        return true;
+    }
+
+    /**
+     * Returns the number of messages delivered to subscribers since the system was started.
+     *
+     * @return the number of delivered messages
+     */
+    public long getDeliveredMessages() {
+        return deliveredMessages.get();
+    }
+
+    /**
+     * Returns the number of messages which were skipped as the channel of the subscriber wasn't writable.
+     *
+     * @return the number of dropped messages
+     */
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+}
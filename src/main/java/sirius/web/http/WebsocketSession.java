@@ -10,14 +10,30 @@ package sirius.web.http;
 
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import sirius.kernel.di.std.ConfigValue;
 
 /**
  * Created per active websocket by a {@link WebsocketDispatcher} to handle incoming and outgoing traffic.
+ * <p>
+ * By default, each incoming frame is processed by its own task, therefore frames of a single connection might be
+ * processed concurrently and out of order. If {@link #isSerialProcessing()} is <tt>true</tt> all frames of a session
+ * are processed one after another by a single task, which drains all frames received so far. Messages sent while
+ * processing these frames are coalesced and flushed once per drain cycle.
  */
 public abstract class WebsocketSession {
 
+    @ConfigValue("http.websockets.serialProcessing")
+    private static boolean serialProcessing;
+
     private final WebContext ctx;
 
+    /**
+     * Contains the thread which currently drains the incoming frames. Messages sent by this thread are only
+     * flushed once the batch is completed.
+     */
+    private volatile Thread batchingThread;
+    private boolean flushPending;
+
     /**
      * Creates a new session for the given channel and request.
      *
@@ -52,7 +68,54 @@ public abstract class WebsocketSession {
      * @param text the string to send
      */
     public void sendMessage(String text) {
-        ctx.getCtx().writeAndFlush(new TextWebSocketFrame(text));
+        sendFrame(new TextWebSocketFrame(text));
+    }
+
+    /**
+     * Sends the given frame to the client.
+     * <p>
+     * If invoked while processing a batch of incoming frames, the frame is only written and flushed once the batch
+     * is completed.
+     *
+     * @param frame the frame to send
+     */
+    public void sendFrame(WebSocketFrame frame) {
+        if (Thread.currentThread() == batchingThread) {
+            flushPending = true;
+            ctx.getCtx().write(frame);
+        } else {
+            ctx.getCtx().writeAndFlush(frame);
+        }
+    }
+
+    /**
+     * Determines if incoming frames are processed one after another.
+     * <p>
+     * By default this is controlled by <tt>http.websockets.serialProcessing</tt>, but can be overwritten by
+     * sessions which rely on the order of incoming messages.
+     *
+     * @return <tt>true</tt> to process all frames serially, <tt>false</tt> to process them in parallel
+     */
+    public boolean isSerialProcessing() {
+        return serialProcessing;
+    }
+
+    /**
+     * Starts a batch of incoming frames processed by the current thread.
+     */
+    void beginBatch() {
+        batchingThread = Thread.currentThread();
+    }
+
+    /**
+     * Completes the batch and flushes all messages written in the meantime.
+     */
+    void completeBatch() {
+        batchingThread = null;
+        if (flushPending) {
+            flushPending = false;
+            ctx.getCtx().flush();
+        }
     }
 
     /**
@@ -0,0 +1,222 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.web.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import sirius.kernel.di.std.ConfigValue;
+
+import javax.annotation.Nullable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+
+/**
+ * Compresses response content on the worker thread which generates it, rather than on the event loop.
+ * <p>
+ * By default, the {@link SmartHttpContentCompressor} compresses all responses within the event loop. Therefore, a
+ * single large response (like a JSON export) can delay all other connections handled by the same event loop. If
+ * <tt>http.compression.offload</tt> is enabled, the {@link ChunkedOutputStream} and all fully buffered responses
+ * compress their content before handing it to netty. As these responses carry a <tt>Content-Encoding</tt> header,
+ * they are passed through by the compressor in the pipeline.
+ * <p>
+ * The compression level is chosen based on the payload size and the current system load, so that the server trades
+ * compression ratio for CPU time when it is busy. Also, the first chunk of each response is used as sample: if it
+ * compresses poorly, the response is sent uncompressed.
+ */
+class WorkerCompressor {
+
+    /**
+     * Payloads above this size are compressed with a reduced level.
+     */
+    private static final int LARGE_PAYLOAD = 1024 * 1024;
+    private static final int FAST_LEVEL = 1;
+    private static final int REDUCED_LEVEL = 3;
+    private static final int LARGE_PAYLOAD_LEVEL = 4;
+    private static final double HIGH_LOAD = 1.0;
+    private static final double ELEVATED_LOAD = 0.75;
+    private static final long LOAD_CHECK_INTERVAL_MILLIS = 1000;
+
+    @ConfigValue("http.compression.offload")
+    private static boolean offload;
+
+    @ConfigValue("http.compression.level")
+    private static int defaultLevel;
+
+    @ConfigValue("http.compression.maxRatio")
+    private static double maxRatio;
+
+    private static final OperatingSystemMXBean OS = ManagementFactory.getOperatingSystemMXBean();
+    private static volatile double currentLoad;
+    private static volatile long lastLoadCheck;
+
+    private final String encoding;
+    private final EmbeddedChannel encoder;
+
+    private WorkerCompressor(String encoding, ChannelHandler encoderHandler) {
+        this.encoding = encoding;
+        this.encoder = new EmbeddedChannel(encoderHandler);
+    }
+
+    /**
+     * Creates a compressor for the given response if offloading is enabled and the response can be compressed.
+     *
+     * @param response     the response to compress
+     * @param contentType  the content type of the response
+     * @param payloadSize  the (expected) size of the payload
+     * @return a compressor or <tt>null</tt> if the content has to be sent as is
+     */
+    @Nullable
+    static WorkerCompressor create(Response response, @Nullable String contentType, long payloadSize) {
+        if (!offload
+            || payloadSize < SmartHttpContentCompressor.MIN_COMPRESSABLE_CONTENT_LENGTH
+            || HttpMethod.HEAD.equals(response.wc.getRequest().method())
+            || response.headers().contains(HttpHeaderNames.CONTENT_ENCODING)
+            || !response.canBeCompressed(contentType)) {
+            return null;
+        }
+
+        ContentEncoding encoding = ContentEncoding.negotiate(response.wc.getHeader(HttpHeaderNames.ACCEPT_ENCODING));
+        if (encoding == null) {
+            return null;
+        }
+
+        return new WorkerCompressor(encoding.getName(), encoding.createEncoder(determineLevel(payloadSize)));
+    }
+
+    /**
+     * Determines the compression level based on the configured level, the payload size and the current system load.
+     *
+     * @param payloadSize the (expected) size of the payload
+     * @return the compression level to use
+     */
+    static int determineLevel(long payloadSize) {
+        int level = defaultLevel;
+        if (payloadSize > LARGE_PAYLOAD) {
+            level = Math.min(level, LARGE_PAYLOAD_LEVEL);
+        }
+
+        double load = determineLoad();
+        if (load > HIGH_LOAD) {
+            return FAST_LEVEL;
+        }
+        if (load > ELEVATED_LOAD) {
+            return Math.min(level, REDUCED_LEVEL);
+        }
+
+        return level;
+    }
+
+    /*
+     * Determines the system load per processor. This is only updated once per second, as some platforms
+     * compute this value on each call.
+     */
+    private static double determineLoad() {
+        long now = System.currentTimeMillis();
+        if (now - lastLoadCheck > LOAD_CHECK_INTERVAL_MILLIS) {
+            lastLoadCheck = now;
+            currentLoad = Math.max(0, OS.getSystemLoadAverage()) / OS.getAvailableProcessors();
+        }
+
+        return currentLoad;
+    }
+
+    /**
+     * Returns the name of the encoding to be sent as <tt>Content-Encoding</tt>.
+     *
+     * @return the name of the content encoding
+     */
+    String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Compresses the given buffer.
+     * <p>
+     * Note that the given buffer is released.
+     *
+     * @param content the content to compress
+     * @return the compressed content (which might be empty, if the encoder is still collecting data)
+     */
+    ByteBuf encode(ByteBuf content) {
+        encoder.writeOutbound(content);
+        return drain();
+    }
+
+    /**
+     * Completes the compressed stream.
+     *
+     * @return the remaining compressed data
+     */
+    ByteBuf finish() {
+        encoder.finish();
+        return drain();
+    }
+
+    /**
+     * Releases all resources held by the encoder, in case the stream is aborted.
+     */
+    void release() {
+        encoder.finishAndReleaseAll();
+    }
+
+    /**
+     * Determines if the compressed size indicates that the content compresses poorly.
+     *
+     * @param originalSize   the size of the uncompressed sample
+     * @param compressedSize the size of the compressed sample
+     * @return <tt>true</tt> if it isn't worth compressing the content, <tt>false</tt> otherwise
+     */
+    static boolean isPoorlyCompressed(int originalSize, int compressedSize) {
+        return compressedSize > originalSize * maxRatio;
+    }
+
+    /**
+     * Compresses the given content as a whole.
+     * <p>
+     * If the content compresses poorly, the original content is returned and the compressor is released.
+     *
+     * @param content the content to compress
+     * @return the compressed content or the given content if it compresses poorly
+     */
+    ByteBuf compressFully(ByteBuf content) {
+        int originalSize = content.readableBytes();
+        CompositeByteBuf result = Unpooled.compositeBuffer();
+        result.addComponent(true, encode(content.retainedDuplicate()));
+        result.addComponent(true, finish());
+        if (isPoorlyCompressed(originalSize, result.readableBytes())) {
+            result.release();
+            return content;
+        }
+
+        content.release();
+        return result;
+    }
+
+    private ByteBuf drain() {
+        CompositeByteBuf result = null;
+        ByteBuf buffer;
+        while ((buffer = encoder.readOutbound()) != null) {
+            if (!buffer.isReadable()) {
+                buffer.release();
+                continue;
+            }
+            if (result == null) {
+                result = Unpooled.compositeBuffer();
+            }
+            result.addComponent(true, buffer);
+        }
+
+        return result == null ? Unpooled.EMPTY_BUFFER : result;
+    }
+}
@@ -9,6 +9,7 @@
 package sirius.web.resources;
 
 import sirius.kernel.Sirius;
+import sirius.kernel.di.std.Part;
 import sirius.kernel.di.std.Register;
 
 import java.net.URL;
@@ -19,11 +20,14 @@ import java.net.URL;
 @Register
 public class ClasspathCustomizationResolver implements Resolver {
 
+    @Part
+    private ClasspathIndex classpathIndex;
+
     @Override
     public Resource resolve(String scopeId, String resource) {
         URL effectiveUrl = null;
         for (String config : Sirius.getActiveConfigurations()) {
-            URL url = getClass().getResource("/customizations/" + config + resource);
+            URL url = lookup("/customizations/" + config + resource);
             if (url != null) {
                 effectiveUrl = url;
             }
@@ -34,6 +38,14 @@ public class ClasspathCustomizationResolver implements Resolver {
         return Resource.constantResource(scopeId, resource, effectiveUrl);
     }
 
+    private URL lookup(String path) {
+        if (classpathIndex.isEnabled()) {
+            return classpathIndex.getResource(path);
+        }
+
+        return getClass().getResource(path);
+    }
+
     @Override
     public int getPriority() {
         return 90;
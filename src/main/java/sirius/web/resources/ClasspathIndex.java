@@ -0,0 +1,271 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.web.resources;
+
+import sirius.kernel.Sirius;
+import sirius.kernel.Startable;
+import sirius.kernel.commons.Watch;
+import sirius.kernel.di.std.ConfigValue;
+import sirius.kernel.di.std.Register;
+import sirius.kernel.health.Exceptions;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.jar.JarFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Provides an immutable index of all resources within the component roots of the classpath.
+ * <p>
+ * Looking up a resource via {@link Class#getResource(String)} has to scan all jars of the classpath. This is
+ * especially expensive for negative lookups, as the {@link ClasspathResolver} probes each path twice (once plain and
+ * once with a <tt>/default</tt> prefix) and the {@link ClasspathCustomizationResolver} probes it once per
+ * customization. Therefore, we collect the paths of all resources (excluding class files) along with their URLs once
+ * on startup, so that positive lookups are answered via a simple hash lookup.
+ * <p>
+ * Note that only the component roots (the ones containing a <tt>component.marker</tt>) are indexed. This is where
+ * all templates, tag libraries, assets and other resources reside. Therefore, the index is only authoritative for
+ * paths within the top-level directories of these roots (e.g. <tt>templates/</tt> or <tt>assets/</tt>), as long as no
+ * other classpath entry provides the same directory. Negative lookups for these paths are answered by the index,
+ * everything else falls back to the class loader. The index can be disabled via <tt>resources.classpathIndex</tt>.
+ * In development systems, negative lookups are always double-checked against the classpath as new files might have
+ * been created. Use {@link #rebuild()} to pick up such changes permanently.
+ */
+@Register(classes = {ClasspathIndex.class, Startable.class})
+public class ClasspathIndex implements Startable {
+
+    private static final String CLASS_FILE_SUFFIX = ".class";
+
+    @ConfigValue("resources.classpathIndex")
+    private boolean enabled;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * Contains the state of the index, which is replaced as a whole by {@link #rebuild()}.
+     *
+     * @param resources                the URL of each indexed path
+     * @param sortedPaths              all indexed paths in alphabetical order
+     * @param authoritativeDirectories the top-level directories for which the index is complete
+     */
+    private record Snapshot(Map<String, URL> resources,
+                            List<String> sortedPaths,
+                            Set<String> authoritativeDirectories) {
+    }
+
+    @Override
+    public int getPriority() {
+        return 50;
+    }
+
+    @Override
+    public void started() {
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Determines if the index is enabled.
+     *
+     * @return <tt>true</tt> if the index is enabled, <tt>false</tt> if all lookups should be performed on the
+     * classpath directly
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Re-scans the classpath and replaces the current index.
+     */
+    public void rebuild() {
+        Watch watch = Watch.start();
+        Map<String, URL> resources = new HashMap<>();
+        List<String> rootPrefixes = new ArrayList<>();
+        for (URL root : Sirius.getClasspath().getComponentRoots()) {
+            try {
+                rootPrefixes.add(determineBase(root));
+                scanRoot(root, resources);
+            } catch (Exception e) {
+                Exceptions.handle()
+                          .to(Resources.LOG)
+                          .error(e)
+                          .withSystemErrorMessage("Failed to index the classpath root %s: %s (%s)", root)
+                          .handle();
+            }
+        }
+
+        this.snapshot = new Snapshot(Map.copyOf(resources),
+                                     resources.keySet().stream().sorted().toList(),
+                                     determineAuthoritativeDirectories(resources.keySet(), rootPrefixes));
+        Resources.LOG.FINE("Indexed %s classpath resources in %s", resources.size(), watch.duration());
+    }
+
+    /**
+     * Determines the base URL of a component root, which is the location of its <tt>component.marker</tt>.
+     */
+    private String determineBase(URL root) {
+        String url = root.toExternalForm();
+        return url.substring(0, url.lastIndexOf('/') + 1);
+    }
+
+    private void scanRoot(URL root, Map<String, URL> resources) throws IOException, URISyntaxException {
+        if ("file".equals(root.getProtocol())) {
+            Path base = Paths.get(root.toURI()).getParent();
+            try (Stream<Path> files = Files.walk(base)) {
+                files.filter(Files::isRegularFile).forEach(file -> {
+                    String path = base.relativize(file).toString().replace(File.separatorChar, '/');
+                    indexResource(resources, path, () -> file.toUri().toURL());
+                });
+            }
+        } else if ("jar".equals(root.getProtocol())) {
+            JarURLConnection connection = (JarURLConnection) root.openConnection();
+            connection.setUseCaches(false);
+            try (JarFile jar = connection.getJarFile()) {
+                String base = determineBase(root);
+                jar.stream()
+                   .filter(entry -> !entry.isDirectory())
+                   .forEach(entry -> indexResource(resources, entry.getName(), () -> new URL(base + entry.getName())));
+            }
+        }
+    }
+
+    private void indexResource(Map<String, URL> resources, String path, Callable<URL> urlProducer) {
+        if (path.endsWith(CLASS_FILE_SUFFIX) || resources.containsKey(path)) {
+            // The first root wins, just like when asking the class loader...
+            return;
+        }
+
+        try {
+            resources.put(path, urlProducer.call());
+        } catch (Exception e) {
+            Exceptions.ignore(e);
+        }
+    }
+
+    /**
+     * Determines the top-level directories of the indexed roots which aren't provided by any other classpath entry.
+     */
+    private Set<String> determineAuthoritativeDirectories(Set<String> paths, List<String> rootPrefixes) {
+        Set<String> directories = new HashSet<>();
+        for (String path : paths) {
+            int slash = path.indexOf('/');
+            if (slash > 0) {
+                directories.add(path.substring(0, slash));
+            }
+        }
+
+        directories.removeIf(directory -> isProvidedByOtherEntries(directory, rootPrefixes));
+        return Set.copyOf(directories);
+    }
+
+    private boolean isProvidedByOtherEntries(String directory, List<String> rootPrefixes) {
+        try {
+            Enumeration<URL> locations = getClass().getClassLoader().getResources(directory + "/");
+            while (locations.hasMoreElements()) {
+                String location = locations.nextElement().toExternalForm();
+                if (rootPrefixes.stream().noneMatch(location::startsWith)) {
+                    return true;
+                }
+            }
+
+            return false;
+        } catch (IOException e) {
+            Exceptions.ignore(e);
+            return true;
+        }
+    }
+
+    private Snapshot getSnapshot() {
+        if (snapshot == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    rebuild();
+                }
+            }
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Determines if the given path exists in the classpath.
+     *
+     * @param path the path to check. A leading "/" is ignored.
+     * @return <tt>true</tt> if a resource with the given path exists, <tt>false</tt> otherwise
+     */
+    public boolean contains(@Nonnull String path) {
+        return getResource(path) != null;
+    }
+
+    /**
+     * Resolves the given path into an URL.
+     * <p>
+     * Paths which aren't in the index are resolved via the class loader, unless the index is authoritative for
+     * them.
+     *
+     * @param path the path to resolve. A leading "/" is ignored.
+     * @return the URL of the resource or <tt>null</tt> if no resource with the given path exists
+     */
+    @Nullable
+    public URL getResource(@Nonnull String path) {
+        String effectivePath = path.startsWith("/") ? path.substring(1) : path;
+        Snapshot currentSnapshot = getSnapshot();
+        URL url = currentSnapshot.resources().get(effectivePath);
+        if (url != null) {
+            return url;
+        }
+
+        if (!Sirius.isDev() && isAuthoritative(currentSnapshot, effectivePath)) {
+            return null;
+        }
+
+        return getClass().getResource("/" + effectivePath);
+    }
+
+    private boolean isAuthoritative(Snapshot currentSnapshot, String path) {
+        int slash = path.indexOf('/');
+        return slash > 0 && currentSnapshot.authoritativeDirectories().contains(path.substring(0, slash));
+    }
+
+    /**
+     * Finds all indexed paths which match the given pattern.
+     * <p>
+     * This provides the same semantics as {@link sirius.kernel.Classpath#find(Pattern)} without scanning the
+     * classpath.
+     *
+     * @param pattern the pattern to match against the relative paths of all resources
+     * @return a stream of matchers for all matching paths
+     */
+    public Stream<Matcher> find(@Nonnull Pattern pattern) {
+        if (!enabled) {
+            return Sirius.getClasspath().find(pattern);
+        }
+
+        return getSnapshot().sortedPaths().stream().map(pattern::matcher).filter(Matcher::matches);
+    }
+}
@@ -8,6 +8,7 @@
 
 package sirius.web.resources;
 
+import sirius.kernel.di.std.Part;
 import sirius.kernel.di.std.Register;
 
 import javax.annotation.Nonnull;
@@ -20,22 +21,33 @@ import java.net.URL;
 public class ClasspathResolver implements Resolver {
     private static final String FORCE_ORIGINAL_PREFIX = "/original:";
 
+    @Part
+    private ClasspathIndex classpathIndex;
+
     @Override
     public Resource resolve(@Nonnull String scopeId, @Nonnull String resource) {
         String resourceToResolve =
                 resource.startsWith(FORCE_ORIGINAL_PREFIX) ? resource.replace(FORCE_ORIGINAL_PREFIX, "/") : resource;
 
-        URL url = getClass().getResource(resourceToResolve);
+        URL url = lookup(resourceToResolve);
         if (url != null) {
             return Resource.constantResource(scopeId, resource, url);
         }
-        url = getClass().getResource("/default" + resourceToResolve);
+        url = lookup("/default" + resourceToResolve);
         if (url != null) {
             return Resource.constantResource(scopeId, resource, url);
         }
         return null;
     }
 
+    private URL lookup(String path) {
+        if (classpathIndex.isEnabled()) {
+            return classpathIndex.getResource(path);
+        }
+
+        return getClass().getResource(path);
+    }
+
     @Override
     public int getPriority() {
         return DEFAULT_PRIORITY;
@@ -12,6 +12,7 @@ import sirius.kernel.Sirius;
 import sirius.kernel.commons.RateLimit;
 import sirius.kernel.commons.Streams;
 import sirius.kernel.commons.Strings;
+import sirius.kernel.di.std.Part;
 import sirius.kernel.health.Exceptions;
 
 import java.io.File;
@@ -38,6 +39,11 @@ import java.util.concurrent.TimeUnit;
  */
 public class Resource {
     private static final String PROTOCOL_FILE = "file";
+    private static final String PROTOCOL_JAR = "jar";
+
+    @Part
+    private static ResourceWatcher watcher;
+
     private final String scopeId;
     private final String path;
     private final URL url;
@@ -219,7 +225,9 @@ public class Resource {
      * Computes the last modified date.
      * <p>
      * This value will be cached if the resource is considered constant. However, in development systems
-     * the resource will still be checked in a regular interval.
+     * the resource will still be checked in a regular interval. If the {@link ResourceWatcher} is active, file-backed
+     * resources don't poll at all, but use the timestamps maintained by the watcher. Resources which are located in a
+     * jar file cannot change without a restart and are therefore only checked once.
      * <p>
      * Also note that the last modified timestamp is
      * at least the timestamp when the resource was resolved. This is required to manage dynamic resources which
@@ -228,7 +236,11 @@ public class Resource {
      * @return the last modified value of the underlying resource.
      */
     public long getLastModified() {
-        if (lastModified == -1 || Sirius.isDev() || (!consideredConstant && checkInterval.check())) {
+        if (file != null && watcher != null && watcher.isActive()) {
+            return Math.max(watcher.getLastModified(file), minLastModified);
+        }
+        if (lastModified == -1 || (!isJarResource() && (Sirius.isDev()
+                                                          || (!consideredConstant && checkInterval.check())))) {
             try {
                 if (file != null) {
                     lastModified = file.lastModified();
@@ -243,6 +255,10 @@ public class Resource {
         return Math.max(lastModified, minLastModified);
     }
 
+    private boolean isJarResource() {
+        return PROTOCOL_JAR.equals(url.getProtocol());
+    }
+
     private void determineLastModified() throws IOException {
         URLConnection c = url.openConnection();
         lastModified = c.getLastModified();
@@ -0,0 +1,32 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.web.resources;
+
+import javax.annotation.Nullable;
+import java.io.File;
+
+/**
+ * Gets notified by the {@link ResourceWatcher} once a file which backs a {@link Resource} has changed.
+ * <p>
+ * Implementations can be registered in the component model using {@link sirius.kernel.di.std.Register} and are
+ * used to invalidate caches which depend on resources. Note that this is only invoked if
+ * <tt>resources.watchFiles</tt> is enabled.
+ */
+public interface ResourceChangeListener {
+
+    /**
+     * Invoked once a file has been modified, created or deleted.
+     *
+     * @param file             the file which has changed or <tt>null</tt> if events were lost and therefore any file
+     *                         might have changed
+     * @param createdOrDeleted <tt>true</tt> if the file was created or deleted, which might also change the way
+     *                         a path is resolved, <tt>false</tt> if its contents were modified
+     */
+    void resourceChanged(@Nullable File file, boolean createdOrDeleted);
+}
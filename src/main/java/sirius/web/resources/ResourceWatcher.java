@@ -0,0 +1,189 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.web.resources;
+
+import sirius.kernel.Startable;
+import sirius.kernel.Stoppable;
+import sirius.kernel.di.std.ConfigValue;
+import sirius.kernel.di.std.Parts;
+import sirius.kernel.di.std.Register;
+import sirius.kernel.health.Exceptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Uses a {@link WatchService} to detect changes of file-backed {@link Resource resources}.
+ * <p>
+ * By default, a resource polls the last modification timestamp of its underlying file in a regular interval. If
+ * <tt>resources.watchFiles</tt> is enabled, the directory of each file-backed resource is instead registered with
+ * a watch service. The timestamps are then kept in memory and updated once a change is reported, so that
+ * {@link Resource#getLastModified()} doesn't perform any I/O at all. Additionally, all
+ * {@link ResourceChangeListener listeners} are notified so that caches (like the resolver cache of {@link Resources}
+ * or the compiled templates of <tt>Tagliatelle</tt>) can be invalidated right away.
+ */
+@Register(classes = {ResourceWatcher.class, Startable.class, Stoppable.class})
+public class ResourceWatcher implements Startable, Stoppable {
+
+    @ConfigValue("resources.watchFiles")
+    private boolean enabled;
+
+    @Parts(ResourceChangeListener.class)
+    private Collection<ResourceChangeListener> listeners;
+
+    private volatile WatchService watchService;
+    private final Set<Path> watchedDirectories = ConcurrentHashMap.newKeySet();
+    private final Map<Path, Long> lastModifiedTimestamps = new ConcurrentHashMap<>();
+
+    @Override
+    public int getPriority() {
+        return 50;
+    }
+
+    @Override
+    public void started() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            Thread thread = new Thread(this::processEvents, "resource-watcher");
+            thread.setDaemon(true);
+            thread.start();
+        } catch (IOException e) {
+            Exceptions.handle()
+                      .to(Resources.LOG)
+                      .error(e)
+                      .withSystemErrorMessage("Cannot create a watch service, falling back to polling: %s (%s)")
+                      .handle();
+            watchService = null;
+        }
+    }
+
+    @Override
+    public void stopped() {
+        WatchService service = watchService;
+        watchService = null;
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException e) {
+                Exceptions.ignore(e);
+            }
+        }
+    }
+
+    /**
+     * Determines if files are watched or if resources have to poll for changes.
+     *
+     * @return <tt>true</tt> if the watch service is active, <tt>false</tt> otherwise
+     */
+    public boolean isActive() {
+        return watchService != null;
+    }
+
+    /**
+     * Returns the last modification timestamp of the given file.
+     * <p>
+     * When invoked for the first time, the directory of the file is registered with the watch service and the
+     * timestamp is read from disk. Afterwards, the timestamp is only updated if a change has been reported.
+     *
+     * @param file the file to determine the timestamp for
+     * @return the last modification timestamp of the given file
+     */
+    public long getLastModified(File file) {
+        Path path = file.toPath().toAbsolutePath();
+        Long lastModified = lastModifiedTimestamps.get(path);
+        if (lastModified != null) {
+            return lastModified;
+        }
+
+        watchDirectory(path.getParent());
+        return lastModifiedTimestamps.computeIfAbsent(path, ignored -> file.lastModified());
+    }
+
+    private void watchDirectory(Path directory) {
+        WatchService service = watchService;
+        if (directory == null || service == null || watchedDirectories.contains(directory)) {
+            return;
+        }
+
+        try {
+            directory.register(service,
+                               StandardWatchEventKinds.ENTRY_CREATE,
+                               StandardWatchEventKinds.ENTRY_MODIFY,
+                               StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirectories.add(directory);
+        } catch (IOException | ClosedWatchServiceException e) {
+            Exceptions.handle()
+                      .to(Resources.LOG)
+                      .error(e)
+                      .withSystemErrorMessage("Cannot watch the directory %s: %s (%s)", directory)
+                      .handle();
+        }
+    }
+
+    private void processEvents() {
+        while (watchService != null) {
+            try {
+                WatchKey key = watchService.take();
+                if (key.watchable() instanceof Path directory) {
+                    key.pollEvents().forEach(event -> handleEvent(directory, event));
+                }
+                if (!key.reset()) {
+                    watchedDirectories.remove(key.watchable());
+                }
+            } catch (ClosedWatchServiceException e) {
+                Exceptions.ignore(e);
+                return;
+            } catch (InterruptedException e) {
+                Exceptions.ignore(e);
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                Exceptions.handle(Resources.LOG, e);
+            }
+        }
+    }
+
+    private void handleEvent(Path directory, WatchEvent<?> event) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            // We lost some events, therefore all timestamps are re-read on their next access...
+            lastModifiedTimestamps.clear();
+            listeners.forEach(listener -> listener.resourceChanged(null, true));
+            return;
+        }
+        if (!(event.context() instanceof Path relativePath)) {
+            return;
+        }
+
+        Path path = directory.resolve(relativePath).toAbsolutePath();
+        File file = path.toFile();
+        lastModifiedTimestamps.put(path, System.currentTimeMillis());
+
+        if (Resources.LOG.isFINE()) {
+            Resources.LOG.FINE("Detected a change (%s) of: %s", event.kind().name(), path);
+        }
+
+        boolean createdOrDeleted = event.kind() != StandardWatchEventKinds.ENTRY_MODIFY;
+        listeners.forEach(listener -> listener.resourceChanged(file, createdOrDeleted));
+    }
+}
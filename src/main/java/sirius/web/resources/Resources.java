@@ -13,12 +13,15 @@ import sirius.kernel.cache.Cache;
 import sirius.kernel.cache.CacheManager;
 import sirius.kernel.commons.Explain;
 import sirius.kernel.commons.ValueHolder;
+import sirius.kernel.di.std.Part;
 import sirius.kernel.di.std.PriorityParts;
 import sirius.kernel.di.std.Register;
 import sirius.kernel.health.Log;
 import sirius.web.security.UserContext;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
 import java.util.Collection;
 import java.util.Objects;
 import java.util.Optional;
@@ -29,8 +32,8 @@ import java.util.Optional;
  * Resolves templates by iterating over all known {@link Resolver} implementations while providing a cache for
  * frequently checked names / URIs.
  */
-@Register(classes = Resources.class)
-public class Resources {
+@Register(classes = {Resources.class, ResourceChangeListener.class})
+public class Resources implements ResourceChangeListener {
 
     /**
      * Logger used by the resource discovery framework
@@ -40,6 +43,9 @@ public class Resources {
     @PriorityParts(Resolver.class)
     private Collection<Resolver> resolvers;
 
+    @Part
+    private ResourceWatcher watcher;
+
     /**
      * Cache used to map a scope name and local uri to an URL pointing to a resolved content.
      */
@@ -74,8 +80,9 @@ public class Resources {
         String lookupKey = scopeId + "://" + effectiveUri;
         ValueHolder<Resource> cachedValue = resolverCache.get(lookupKey);
         if (cachedValue != null) {
-            if (Sirius.isDev()) {
-                // In dev environments, we always perform a lookup in case something changed
+            if (Sirius.isDev() && !watcher.isActive()) {
+                // In dev environments, we always perform a lookup in case something changed (unless we're
+                // notified about changes by the watcher anyway)
                 Optional<Resource> currentResult = resolveURI(scopeId, effectiveUri);
                 if (cachedValue.get() == null) {
                     return currentResult;
@@ -109,6 +116,22 @@ public class Resources {
         resolverCache.remove(lookupKey);
     }
 
+    /**
+     * Drops all cached lookups.
+     */
+    public void flushCache() {
+        resolverCache.clear();
+    }
+
+    @Override
+    public void resourceChanged(@Nullable File file, boolean createdOrDeleted) {
+        // Creating or deleting a file might change which resolver (or customization) wins for a given uri.
+        // As we cannot reverse map a file into the lookup keys, we simply drop all cached lookups...
+        if (createdOrDeleted) {
+            flushCache();
+        }
+    }
+
     /*
      * Calls all available resolvers to pick the right content for the given scope and uri (without using a cache)
      */
@@ -27,7 +27,9 @@ import sirius.web.security.UserContext;
 import sirius.web.security.UserInfo;
 
 import javax.annotation.Nullable;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Dispatches calls to the JSON / XML Service-Framework (/service).
@@ -51,6 +53,18 @@ public class ServiceDispatcher implements WebDispatcher {
     @Nullable
     private Firewall firewall;
 
+    /**
+     * Contains the rate limiting realm and the required permissions per service class, so that the annotations
+     * don't need to be evaluated for each call.
+     *
+     * @param rateLimitRealm the realm to use for rate limiting or <tt>null</tt> if the service is unlimited
+     * @param permissions    the permissions required to invoke the service
+     */
+    private record ServiceMetadata(@Nullable String rateLimitRealm, String[] permissions) {
+    }
+
+    private final Map<Class<?>, ServiceMetadata> metadata = new ConcurrentHashMap<>();
+
     @Override
     public int getPriority() {
         return PriorityCollector.DEFAULT_PRIORITY - 5;
@@ -107,18 +121,16 @@ public class ServiceDispatcher implements WebDispatcher {
     private void invokeService(WebContext ctx, ServiceCall call, StructuredService serv) {
         TaskContext.get().setSystem(SYSTEM_SERVICE).setSubSystem(serv.getClass().getSimpleName());
 
+        ServiceMetadata serviceMetadata = metadata.computeIfAbsent(serv.getClass(), this::computeMetadata);
         if (firewall != null
-            && !serv.getClass().isAnnotationPresent(Unlimited.class)
-            && firewall.handleRateLimiting(ctx,
-                                           Optional.ofNullable(serv.getClass().getAnnotation(Limited.class))
-                                                   .map(Limited::value)
-                                                   .orElse(Limited.HTTP))) {
+            && serviceMetadata.rateLimitRealm() != null
+            && firewall.handleRateLimiting(ctx, serviceMetadata.rateLimitRealm())) {
             return;
         }
 
         // ... and check permissions
         CachingSupplier<UserInfo> userSupplier = new CachingSupplier<>(UserContext::getCurrentUser);
-        for (String p : Permissions.computePermissionsFromAnnotations(serv.getClass())) {
+        for (String p : serviceMetadata.permissions()) {
             if (!userSupplier.get().hasPermission(p)) {
                 ctx.respondWith().error(HttpResponseStatus.UNAUTHORIZED, "Missing permission: " + p);
                 return;
@@ -129,4 +141,15 @@ public class ServiceDispatcher implements WebDispatcher {
 
         call.invoke(serv);
     }
+
+    private ServiceMetadata computeMetadata(Class<?> serviceClass) {
+        String rateLimitRealm = serviceClass.isAnnotationPresent(Unlimited.class) ?
+                                null :
+                                Optional.ofNullable(serviceClass.getAnnotation(Limited.class))
+                                        .map(Limited::value)
+                                        .orElse(Limited.HTTP);
+
+        return new ServiceMetadata(rateLimitRealm,
+                                   Permissions.computePermissionsFromAnnotations(serviceClass).toArray(new String[0]));
+    }
 }
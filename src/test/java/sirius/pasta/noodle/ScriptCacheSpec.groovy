@@ -0,0 +1,52 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.pasta.noodle
+
+import parsii.tokenizer.Position
+import sirius.kernel.BaseSpecification
+import sirius.kernel.di.std.Part
+
+class ScriptCacheSpec extends BaseSpecification {
+
+    @Part
+    private static ScriptCache scriptCache
+
+    def "compiled scripts are shared"() {
+        when:
+        def first = scriptCache.compileScript("let x = 40; return x + 2;")
+        def second = scriptCache.compileScript("let x = 40; return x + 2;")
+        then:
+        first.is(second)
+        and:
+        second.call(new SimpleEnvironment()) == 42
+    }
+
+    def "the context signature is part of the cache key"() {
+        when:
+        def plain = scriptCache.compileScript("test", "40 + 2", null)
+        def withVariable = scriptCache.compileScript("test", "40 + 2", { context ->
+            context.getVariableScoper().defineVariable(Position.UNKNOWN, "value", String.class)
+        })
+        def sandboxed = scriptCache.compileScript("test", "40 + 2", { context -> context.enableSandbox() })
+        then:
+        !plain.is(withVariable)
+        and:
+        !plain.is(sandboxed)
+    }
+
+    def "scripts with the same code but different names are compiled separately"() {
+        when:
+        def first = scriptCache.compileScript("first", "40 + 2", null)
+        def second = scriptCache.compileScript("second", "40 + 2", null)
+        then:
+        !first.is(second)
+        and:
+        first.is(scriptCache.compileScript("first", "40 + 2", null))
+    }
+}
@@ -8,6 +8,8 @@
 
 package sirius.web.controller;
 
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.JSONReader;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.cookie.CookieHeaderNames;
@@ -19,8 +21,11 @@ import sirius.kernel.di.std.Part;
 import sirius.kernel.di.std.Register;
 import sirius.kernel.health.HandledException;
 import sirius.web.http.CSRFHelper;
+import sirius.web.http.EventStream;
 import sirius.web.http.InputStreamHandler;
+import sirius.web.http.Lane;
 import sirius.web.http.Limited;
+import sirius.web.http.MultipartStream;
 import sirius.web.http.WebContext;
 import sirius.web.resources.Resources;
 import sirius.web.services.JSONStructuredOutput;
@@ -29,8 +34,10 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.zip.GZIPInputStream;
 
 @Register
@@ -70,6 +77,32 @@ public class TestController extends BasicController {
         ctx.respondWith().cached().direct(HttpResponseStatus.OK, "OK");
     }
 
+    @Routed("/test/async")
+    public CompletableFuture<RouteResult> testAsync(WebContext ctx) {
+        return CompletableFuture.supplyAsync(() -> RouteResult.json(out -> out.property("test", "async")));
+    }
+
+    @Routed("/test/sse")
+    public void testSSE(WebContext ctx) {
+        EventStream eventStream = ctx.respondWith().sse();
+        eventStream.ifResumed(lastEventId -> eventStream.send(null, "resumed", lastEventId));
+        eventStream.send("1", "greeting", "Hello\nWorld");
+        eventStream.close();
+    }
+
+    @Lane(Lane.BATCH)
+    @Routed("/test/lane")
+    public void testLane(WebContext ctx) {
+        ctx.respondWith().direct(HttpResponseStatus.OK, Thread.currentThread().getName());
+    }
+
+    @Lane(Lane.BATCH)
+    @Routed("/test/lane/slow")
+    public void testSlowLane(WebContext ctx) {
+        Wait.millis(1000);
+        ctx.respondWith().direct(HttpResponseStatus.OK, "OK");
+    }
+
     @Routed(value = "/test/json-param/:1", jsonCall = true)
     public void testJSONParam(WebContext ctx, JSONStructuredOutput out, String param) {
         out.property("test", param);
@@ -170,6 +203,37 @@ public class TestController extends BasicController {
         ctx.respondWith().direct(HttpResponseStatus.OK, String.valueOf(size));
     }
 
+    @Routed(value = "/test/predispatch/json", preDispatchable = true)
+    public void testPredispatchJSON(WebContext ctx, InputStreamHandler in) throws Exception {
+        int sum = 0;
+        try (JSONReader reader = ctx.getJSONContentReader()) {
+            reader.startArray();
+            while (reader.hasNext()) {
+                sum += reader.readObject(JSONObject.class).getIntValue("value");
+            }
+            reader.endArray();
+        }
+        ctx.respondWith().direct(HttpResponseStatus.OK, String.valueOf(sum));
+    }
+
+    @Routed(value = "/test/predispatch/multipart", preDispatchable = true)
+    public void testPredispatchMultipart(WebContext ctx, InputStreamHandler in) throws Exception {
+        StringBuilder result = new StringBuilder();
+        MultipartStream multipart = ctx.getMultipartContent();
+        MultipartStream.Part part;
+        while ((part = multipart.nextPart()) != null) {
+            part.computeDigest(MultipartStream.MD5);
+            Streams.exhaust(part.getInputStream());
+            result.append(part.getName())
+                  .append(":")
+                  .append(part.getSize())
+                  .append(":")
+                  .append(part.getDigest(MultipartStream.MD5))
+                  .append("\n");
+        }
+        ctx.respondWith().direct(HttpResponseStatus.OK, result.toString());
+    }
+
     @Routed(value = "/test/predispatch/abort", preDispatchable = true)
     public void testPredispatchAbort(WebContext ctx, InputStreamHandler in) throws Exception {
         ctx.respondWith().direct(HttpResponseStatus.OK, "ABORT");
@@ -185,6 +249,15 @@ public class TestController extends BasicController {
         out.close();
     }
 
+    @Routed("/test/os/compressible")
+    public void testCompressibleOutputStream(WebContext ctx) throws IOException {
+        try (OutputStream out = ctx.respondWith().outputStream(HttpResponseStatus.OK, "text/plain")) {
+            for (int i = 0; i < 100; i++) {
+                out.write("Hello World - this is compressible content!\n".getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
     @Part
     private Resources res;
 
@@ -0,0 +1,62 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.web.http
+
+import sirius.kernel.BaseSpecification
+
+class ByteRangeSpec extends BaseSpecification {
+
+    def "a missing header yields the whole content"() {
+        expect:
+        ByteRange.parse(null, 100, 16).isEmpty()
+    }
+
+    def "single, open and suffix ranges are parsed"() {
+        expect:
+        ByteRange.parse(header, 100, 16) == [new ByteRange(start, end)]
+        where:
+        header        | start | end
+        "bytes=0-9"   | 0     | 9
+        "bytes=90-"   | 90    | 99
+        "bytes=-10"   | 90    | 99
+        "bytes=-500"  | 0     | 99
+        "bytes=50-500"| 50    | 99
+    }
+
+    def "overlapping and adjacent ranges are coalesced"() {
+        expect:
+        ByteRange.parse("bytes=50-59, 0-9, 5-19, 20-29", 100, 16) == [new ByteRange(0, 29), new ByteRange(50, 59)]
+    }
+
+    def "too many ranges are ignored"() {
+        expect:
+        ByteRange.parse("bytes=0-1,3-4,6-7", 100, 2).isEmpty()
+    }
+
+    def "unsatisfiable ranges are rejected"() {
+        when:
+        ByteRange.parse("bytes=100-200", 100, 16)
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "the length of a multipart response is computed correctly"() {
+        given:
+        def ranges = [new ByteRange(0, 9), new ByteRange(50, 59)]
+        def boundary = ByteRange.createBoundary()
+        when:
+        def body = new StringBuilder()
+        ranges.each { range ->
+            body.append(range.toPartHeader(boundary, "text/plain", 100)).append("x" * range.length())
+        }
+        body.append(ByteRange.toTrailer(boundary))
+        then:
+        ByteRange.computeMultipartLength(ranges, boundary, "text/plain", 100) == body.length()
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.web.http
+
+import sirius.kernel.BaseSpecification
+
+class ContentEncodingSpec extends BaseSpecification {
+
+    def "quality values are parsed"() {
+        expect:
+        ContentEncoding.determineQuality(header, encoding) == quality
+        where:
+        header                        | encoding | quality
+        "gzip, deflate"               | "gzip"   | 1
+        "gzip;q=0.5, br"              | "gzip"   | 0.5
+        "gzip;q=0.5, br"              | "br"     | 1
+        "gzip;q=0, *;q=0.3"           | "gzip"   | 0
+        "gzip;q=0, *;q=0.3"           | "zstd"   | 0.3
+        "gzip"                        | "br"     | 0
+    }
+
+    def "the encoding with the highest quality is negotiated"() {
+        expect:
+        ContentEncoding.negotiate("gzip;q=1.0, deflate;q=0.5") == ContentEncoding.GZIP
+        ContentEncoding.negotiate("gzip;q=0.5, deflate") == ContentEncoding.DEFLATE
+    }
+
+    def "identity is used if no acceptable encoding is present"() {
+        expect:
+        ContentEncoding.negotiate(header) == null
+        where:
+        header << [null, "", "identity", "gzip;q=0, deflate;q=0", "*;q=0"]
+    }
+
+    def "a reduced level is used as is for zlib but scaled for other encodings"() {
+        expect: "the adaptive level is already given in the range of gzip"
+        ContentEncoding.limitZlibLevel(level) == zlibLevel
+        and: "other encodings scale their configured level (relative to http.compression.level = 6)"
+        ContentEncoding.scale(level, 4, 11) == brotliLevel
+        where:
+        level | zlibLevel | brotliLevel
+        6     | 6         | 4
+        3     | 3         | 2
+        2     | 2         | 1
+        1     | 1         | 1
+        12    | 9         | 4
+    }
+}
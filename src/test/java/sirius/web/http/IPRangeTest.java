@@ -77,6 +77,35 @@ public class IPRangeTest {
         assertTrue(set.accepts(InetAddress.getByName("192.167.12.1")));
     }
 
+    @Test
+    public void testOverlappingAndLargeRangeSets() throws Exception {
+        IPRange.RangeSet set = IPRange.parseRangeSet("10.0.0.0/8, 10.1.0.0/16, 10.1.2.3");
+        assertTrue(set.accepts(InetAddress.getByName("10.200.1.1")));
+        assertTrue(set.accepts(InetAddress.getByName("10.1.2.3")));
+        assertFalse(set.accepts(InetAddress.getByName("11.1.2.3")));
+
+        StringBuilder ranges = new StringBuilder();
+        for (int i = 0; i < 256; i++) {
+            ranges.append("172.").append(i).append(".0.0/24,");
+        }
+        set = IPRange.parseRangeSet(ranges.toString());
+        assertTrue(set.accepts(InetAddress.getByName("172.200.0.17")));
+        assertFalse(set.accepts(InetAddress.getByName("172.200.1.17")));
+    }
+
+    @Test
+    public void testAddressFamiliesAreSeparated() throws Exception {
+        IPRange.RangeSet set = IPRange.parseRangeSet("192.168.0.0/16, fe:fe::/32");
+        assertTrue(set.accepts(InetAddress.getByName("192.168.1.1")));
+        assertTrue(set.accepts(InetAddress.getByName("fe:fe:05::")));
+        assertFalse(set.accepts(InetAddress.getByName("fe:fa:05::")));
+        assertFalse(set.accepts(InetAddress.getByName("::1")));
+
+        set = IPRange.parseRangeSet("0.0.0.0/0");
+        assertTrue(set.accepts(InetAddress.getByName("192.168.1.1")));
+        assertTrue(set.accepts(InetAddress.getByName("::1")));
+    }
+
     @Test
     public void testIPv6() throws Exception {
         // Run some simple tests against some IPv6 addresses
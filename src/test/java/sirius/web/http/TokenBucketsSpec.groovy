@@ -0,0 +1,62 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.web.http
+
+import sirius.kernel.BaseSpecification
+
+class TokenBucketsSpec extends BaseSpecification {
+
+    def "a burst up to the capacity is permitted"() {
+        given:
+        def buckets = new TokenBuckets(1024)
+        def now = System.currentTimeMillis()
+        when:
+        def results = (1..5).collect { buckets.tryAcquire(4711L, now, 1000, 5) }
+        then:
+        results.every { it == 0 }
+        and:
+        buckets.tryAcquire(4711L, now, 1000, 5) == 1000
+    }
+
+    def "buckets are refilled over time"() {
+        given:
+        def buckets = new TokenBuckets(1024)
+        def now = System.currentTimeMillis()
+        when:
+        buckets.tryAcquire(4711L, now, 1000, 1)
+        then:
+        buckets.tryAcquire(4711L, now + 400, 1000, 1) == 600
+        and:
+        buckets.tryAcquire(4711L, now + 1000, 1000, 1) == 0
+    }
+
+    def "keys don't affect each other"() {
+        given:
+        def buckets = new TokenBuckets(1024)
+        def now = System.currentTimeMillis()
+        when:
+        buckets.tryAcquire(1L << 50, now, 1000, 1)
+        then:
+        buckets.tryAcquire(1L << 50, now, 1000, 1) > 0
+        and:
+        buckets.tryAcquire(2L << 50, now, 1000, 1) == 0
+    }
+
+    def "a flood of unique keys doesn't grow the table"() {
+        given:
+        def buckets = new TokenBuckets(1000)
+        def now = System.currentTimeMillis()
+        when:
+        for (long key = 0; key < 100_000; key++) {
+            buckets.tryAcquire(key * 0x9E3779B97F4A7C15L, now, 1000, 1)
+        }
+        then:
+        buckets.capacity() == 1024
+    }
+}
@@ -15,10 +15,12 @@ import sirius.kernel.BaseSpecification
 import sirius.kernel.commons.Streams
 import sirius.kernel.commons.Strings
 import sirius.kernel.commons.Wait
+import sirius.kernel.di.Injector
 import sirius.kernel.health.LogHelper
 
 import java.nio.charset.StandardCharsets
 import java.util.logging.Level
+import java.util.zip.GZIPInputStream
 
 /**
  * Simulates a bunch of "real" (outside) requests through netty and sirius.
@@ -58,6 +60,58 @@ class WebServerSpec extends BaseSpecification {
         data == "OK"
     }
 
+    /**
+     * Ensures that a route returning a CompletableFuture responds once the future completes.
+     */
+    def "Invoke /test/async to check if asynchronous routes work"() {
+        when:
+        def data = callAndRead("/test/async", null, null)
+        then:
+        data.contains('"test":"async"')
+    }
+
+    /**
+     * Ensures that server-sent events are framed properly.
+     */
+    def "Invoke /test/sse to check if server-sent events work"() {
+        when:
+        def data = callAndRead("/test/sse", null, null)
+        then:
+        data.contains("id: 1\nevent: greeting\ndata: Hello\ndata: World\n\n")
+    }
+
+    /**
+     * Ensures that routes assigned to a lane are executed by the executor of the lane.
+     */
+    def "Invoke /test/lane to check if lanes are used"() {
+        when:
+        def data = callAndRead("/test/lane", null, null)
+        then:
+        data.startsWith("lane-batch")
+    }
+
+    /**
+     * Ensures that a slow route within a lane isn't taken as congestion by the global concurrency limiter.
+     */
+    def "Invoke /test/lane/slow and expect the concurrency limit to remain unchanged"() {
+        given:
+        ConcurrencyLimiter limiter = Injector.context().getPart(ConcurrencyLimiter.class)
+        limiter.enabled = true
+        and: "some fast requests establish a low long-term latency"
+        5.times { callAndRead("/test/json?test=fast", null, null) }
+        def limit = limiter.getLimit()
+        when:
+        def data = callAndRead("/test/lane/slow", null, null)
+        then:
+        data == "OK"
+        and:
+        limiter.getLimit() == limit
+        and:
+        limiter.getInFlight() == 0
+        cleanup:
+        limiter.enabled = false
+    }
+
     /**
      * Ensures that set-cookie and caching headers aren't mixed.
      */
@@ -85,6 +139,55 @@ class WebServerSpec extends BaseSpecification {
         "body { background-color: #000000; }" == data
     }
 
+    def "Invoke /assets/test.css with If-None-Match and expect a 304"() {
+        given:
+        HttpURLConnection first = new URL("http://localhost:9999/assets/test.css").openConnection()
+        def etag = first.getHeaderField(HttpHeaderNames.ETAG.toString())
+        when:
+        HttpURLConnection second = new URL("http://localhost:9999/assets/test.css").openConnection()
+        second.addRequestProperty(HttpHeaderNames.IF_NONE_MATCH.toString(), etag)
+        then:
+        Strings.isFilled(etag)
+        and:
+        second.getResponseCode() == HttpResponseStatus.NOT_MODIFIED.code()
+        second.getHeaderField(HttpHeaderNames.ETAG.toString()) == etag
+    }
+
+    def "Invoke /test/json with If-None-Match and expect a 304"() {
+        given:
+        HttpURLConnection first = new URL("http://localhost:9999/test/json?test=etag").openConnection()
+        def etag = first.getHeaderField(HttpHeaderNames.ETAG.toString())
+        when:
+        HttpURLConnection second = new URL("http://localhost:9999/test/json?test=etag").openConnection()
+        second.addRequestProperty(HttpHeaderNames.IF_NONE_MATCH.toString(), "\"other\", " + etag)
+        then:
+        Strings.isFilled(etag)
+        and:
+        second.getResponseCode() == HttpResponseStatus.NOT_MODIFIED.code()
+    }
+
+    def "compressed responses carry the content coding in their entity tag"() {
+        given:
+        WorkerCompressor.offload = true
+        HttpURLConnection plain = new URL("http://localhost:9999/test/os/compressible").openConnection()
+        HttpURLConnection compressed = new URL("http://localhost:9999/test/os/compressible").openConnection()
+        compressed.addRequestProperty("accept-encoding", "gzip")
+        def plainTag = plain.getHeaderField(HttpHeaderNames.ETAG.toString())
+        def compressedTag = compressed.getHeaderField(HttpHeaderNames.ETAG.toString())
+        when:
+        HttpURLConnection second = new URL("http://localhost:9999/test/os/compressible").openConnection()
+        second.addRequestProperty("accept-encoding", "gzip")
+        second.addRequestProperty(HttpHeaderNames.IF_NONE_MATCH.toString(), compressedTag)
+        then:
+        compressed.getHeaderField("content-encoding") == "gzip"
+        compressedTag == plainTag.substring(0, plainTag.length() - 1) + "-gzip\""
+        and:
+        second.getResponseCode() == HttpResponseStatus.NOT_MODIFIED.code()
+        second.getHeaderField(HttpHeaderNames.ETAG.toString()) == compressedTag
+        cleanup:
+        WorkerCompressor.offload = false
+    }
+
     def "Invoke /assets/test_large.css"() {
         given:
         def uri = "/assets/test_large.css"
@@ -366,6 +469,59 @@ class WebServerSpec extends BaseSpecification {
         u.getHeaderField(HttpHeaderNames.CONNECTION.toString()) == HttpHeaderNames.KEEP_ALIVE.toString()
     }
 
+    /**
+     * Ensures that a JSON body can be read record by record while it is being uploaded.
+     */
+    def "Invoke /test/predispatch/json to stream a JSON array"() {
+        given:
+        HttpURLConnection u = new URL("http://localhost:9999/test/predispatch/json").openConnection()
+        when:
+        u.setRequestMethod("POST")
+        u.setRequestProperty("Content-Type", "application/json")
+        u.setChunkedStreamingMode(1024)
+        u.setDoInput(true)
+        u.setDoOutput(true)
+        def out = u.getOutputStream()
+        out.write("[".getBytes(StandardCharsets.UTF_8))
+        for (int i = 0; i < 1000; i++) {
+            out.write(((i > 0 ? "," : "") + '{"value":2}').getBytes(StandardCharsets.UTF_8))
+        }
+        out.write("]".getBytes(StandardCharsets.UTF_8))
+        out.close()
+        def result = new String(Streams.toByteArray(u.getInputStream()), StandardCharsets.UTF_8)
+        then:
+        "2000" == result
+    }
+
+    /**
+     * Ensures that a multipart upload is parsed part by part while it is being uploaded.
+     */
+    def "Invoke /test/predispatch/multipart to stream a multipart upload"() {
+        given:
+        HttpURLConnection u = new URL("http://localhost:9999/test/predispatch/multipart").openConnection()
+        when:
+        u.setRequestMethod("POST")
+        u.setRequestProperty("Content-Type", "multipart/form-data; boundary=TestBoundary")
+        u.setChunkedStreamingMode(1024)
+        u.setDoInput(true)
+        u.setDoOutput(true)
+        def out = u.getOutputStream()
+        out.write(("--TestBoundary\r\n" +
+                "Content-Disposition: form-data; name=\"field\"\r\n\r\n" +
+                "value\r\n" +
+                "--TestBoundary\r\n" +
+                "Content-Disposition: form-data; name=\"file\"; filename=\"test.txt\"\r\n" +
+                "Content-Type: text/plain\r\n\r\n").getBytes(StandardCharsets.UTF_8))
+        for (int i = 0; i < 10000; i++) {
+            out.write("Hello".getBytes(StandardCharsets.UTF_8))
+        }
+        out.write("\r\n--TestBoundary--\r\n".getBytes(StandardCharsets.UTF_8))
+        out.close()
+        def result = new String(Streams.toByteArray(u.getInputStream()), StandardCharsets.UTF_8)
+        then:
+        result.startsWith("field:5:2063c1608d6e0baf80249c42e2be5804\nfile:50000:")
+    }
+
     /**
      * Call a controller which uses predispatching but responds before the content has been read.
      *
@@ -439,6 +595,23 @@ class WebServerSpec extends BaseSpecification {
 
     }
 
+    def "buffered responses which are compressed on the worker report the compressed length"() {
+        given:
+        WorkerCompressor.offload = true
+        HttpURLConnection u = new URL("http://localhost:9999/test/os/compressible").openConnection()
+        u.addRequestProperty("accept-encoding", "gzip")
+        when:
+        def arr = Streams.toByteArray(u.getInputStream())
+        then:
+        u.getHeaderField("content-encoding") == "gzip"
+        and:
+        u.getContentLengthLong() == arr.length
+        and:
+        new GZIPInputStream(new ByteArrayInputStream(arr)).getText("UTF-8").length() == 100 * 44
+        cleanup:
+        WorkerCompressor.offload = false
+    }
+
     /**
      * Test an empty POST
      */
@@ -0,0 +1,113 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.web.http
+
+import io.netty.channel.ChannelInboundHandlerAdapter
+import io.netty.channel.embedded.EmbeddedChannel
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame
+import io.netty.handler.codec.http.websocketx.WebSocketFrame
+import sirius.kernel.BaseSpecification
+
+class WebsocketHubSpec extends BaseSpecification {
+
+    private static WebsocketSession createSession(EmbeddedChannel channel) {
+        WebContext webContext = new WebContext()
+        webContext.setCtx(channel.pipeline().firstContext())
+        return new WebsocketSession(webContext) {
+            @Override
+            void onFrame(WebSocketFrame frame) {
+            }
+        }
+    }
+
+    private static String readMessage(EmbeddedChannel channel) {
+        TextWebSocketFrame frame = channel.readOutbound()
+        try {
+            return frame.text()
+        } finally {
+            frame.release()
+        }
+    }
+
+    def "publish delivers a message to all subscribers of a topic"() {
+        given:
+        def hub = new WebsocketHub()
+        def channel1 = new EmbeddedChannel(new ChannelInboundHandlerAdapter())
+        def channel2 = new EmbeddedChannel(new ChannelInboundHandlerAdapter())
+        def otherChannel = new EmbeddedChannel(new ChannelInboundHandlerAdapter())
+        hub.subscribe("news", createSession(channel1))
+        hub.subscribe("news", createSession(channel2))
+        hub.subscribe("other", createSession(otherChannel))
+        when:
+        def delivered = hub.publish("news", "Hello World")
+        then:
+        delivered == 2
+        hub.getDeliveredMessages() == 2
+        and:
+        readMessage(channel1) == "Hello World"
+        readMessage(channel2) == "Hello World"
+        and:
+        otherChannel.readOutbound() == null
+    }
+
+    def "publish skips subscribers whose channel isn't writable"() {
+        given:
+        def hub = new WebsocketHub()
+        def writableChannel = new EmbeddedChannel(new ChannelInboundHandlerAdapter())
+        def congestedChannel = new EmbeddedChannel(new ChannelInboundHandlerAdapter())
+        congestedChannel.unsafe().outboundBuffer().setUserDefinedWritability(1, false)
+        hub.subscribe("news", createSession(writableChannel))
+        hub.subscribe("news", createSession(congestedChannel))
+        when:
+        def delivered = hub.publish("news", "Hello World")
+        then:
+        delivered == 1
+        hub.getDroppedMessages() == 1
+        and:
+        readMessage(writableChannel) == "Hello World"
+        congestedChannel.readOutbound() == null
+        and: "the subscription is kept, as the client might catch up again"
+        hub.getNumberOfSubscribers("news") == 2
+    }
+
+    def "subscribers of a closed channel are removed"() {
+        given:
+        def hub = new WebsocketHub()
+        def channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter())
+        hub.subscribe("news", createSession(channel))
+        when:
+        channel.close()
+        then:
+        hub.publish("news", "Hello World") == 0
+        and:
+        hub.getNumberOfSubscribers("news") == 0
+    }
+
+    def "unsubscribeAll removes a session from all topics"() {
+        given:
+        def hub = new WebsocketHub()
+        def channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter())
+        def otherChannel = new EmbeddedChannel(new ChannelInboundHandlerAdapter())
+        def session = createSession(channel)
+        hub.subscribe("news", session)
+        hub.subscribe("sports", session)
+        hub.subscribe("sports", createSession(otherChannel))
+        when:
+        hub.unsubscribeAll(session)
+        then:
+        hub.getNumberOfSubscribers("news") == 0
+        hub.getNumberOfSubscribers("sports") == 1
+        and:
+        hub.publish("news", "Hello World") == 0
+        hub.publish("sports", "Hello World") == 1
+        and:
+        channel.readOutbound() == null
+        readMessage(otherChannel) == "Hello World"
+    }
+}